@@ -0,0 +1,103 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of writing issues with {@link CSVPrinter} and with {@link CsvRecordWriter} for each of the
+ * supported CSV formats. Run with {@code -prof gc} to compare the allocation rate of the two writers.
+ *
+ * @author Ryan Emerson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CsvPrinterBenchmark {
+
+    @Param({"excel", "mysql", "rfc4180", "tdf"})
+    public String format;
+
+    private CSVFormat csvFormat;
+    private IssueRecord[] records;
+
+    @Setup
+    public void setup() {
+        csvFormat = new CommandLineParser(new String[0]).getValidCSVFormats().get(format);
+        records = IssueProcessorBenchmark.createRecords(IssueProcessorBenchmark.NUMBER_OF_RECORDS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(IssueProcessorBenchmark.NUMBER_OF_RECORDS)
+    public void printRecords() throws IOException {
+        try (CSVPrinter printer = new CSVPrinter(new NullWriter(), csvFormat)) {
+            printer.printRecord(IssueProcessor.CSV_HEADERS);
+            for (IssueRecord record : records)
+                printer.printRecord(new IssueProcessor("user", record).getPrintableRecord());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(IssueProcessorBenchmark.NUMBER_OF_RECORDS)
+    public void writeRecords() throws IOException {
+        try (CsvRecordWriter writer = new CsvRecordWriter(new NullWriter(), csvFormat)) {
+            writer.printRecord(IssueProcessor.CSV_HEADERS);
+            for (IssueRecord record : records)
+                IssueProcessor.printRecord(record, writer);
+        }
+    }
+
+    /**
+     * Discards all output, so that only the cost of formatting is measured.
+     */
+    static class NullWriter extends Writer {
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the conversion of an issue into a CSV record.
+ *
+ * @author Ryan Emerson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class IssueProcessorBenchmark {
+
+    static final int NUMBER_OF_RECORDS = 1000;
+
+    private IssueRecord[] records;
+
+    @Setup
+    public void setup() {
+        records = createRecords(NUMBER_OF_RECORDS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_RECORDS)
+    public void getPrintableRecord(Blackhole blackhole) {
+        for (IssueRecord record : records)
+            blackhole.consume(new IssueProcessor("user", record).getPrintableRecord());
+    }
+
+    /**
+     * Create records whose summaries require quoting and escaping in some of the CSV formats.
+     */
+    static IssueRecord[] createRecords(int size) {
+        String[] summaries = {
+                "NPE in the transaction manager",
+                "Upgrade to 1.2, then 1.3",
+                "Support \"quoted\" values",
+                "Line\nbreak in summary",
+                " Leading and trailing space ",
+                "Tab\tseparated"
+        };
+        IssueRecord[] records = new IssueRecord[size];
+        for (int i = 0; i < size; i++)
+            records[i] = new IssueRecord("JBOSS-" + i, "JBoss Project " + (i % 10), summaries[i % summaries.length],
+                    i % 2 == 0 ? "Open" : "Resolved", "reporter" + (i % 20), i % 7 == 0 ? null : "assignee" + (i % 30),
+                    1433152800000L + i, 1433152800000L + i * 1000L);
+        return records;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of composing the query of a batch of users with the format templates the scheduler used to
+ * format for every search, and with {@link JqlQueryBuilder} when the query is built and when it is cached.
+ *
+ * @author Ryan Emerson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JqlQueryBuilderBenchmark {
+
+    private static final String USER_QUERY_TEMPLATE = "(assignee = %1$s OR reporter = %1$s) ";
+    private static final String BATCH_QUERY_TEMPLATE = "(assignee in (%1$s) OR reporter in (%1$s)) ";
+    private static final String QUERY_TEMPLATE = "AND (updated >= '%1$s' OR created >= '%1$s') " +
+            "AND (updated < '%2$s' OR created < '%2$s') " +
+            "ORDER BY updated %3$s";
+
+    @Param({"1", "50"})
+    public int users;
+
+    private final List<String> usernames = new ArrayList<>();
+    private final LocalDate startDate = LocalDate.of(1990, 1, 1);
+    private final LocalDate endDate = LocalDate.of(2015, 6, 1);
+    private JqlQueryBuilder cached;
+    private JqlQueryBuilder uncached;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < users; i++)
+            usernames.add(i % 10 == 0 ? "user." + i : "user" + i);
+        String body = JqlQueryBuilder.getDateRangeBody(startDate, endDate, "ASC");
+        cached = new JqlQueryBuilder(body, 100);
+        uncached = new JqlQueryBuilder(body, 0);
+    }
+
+    @Benchmark
+    public String format() {
+        String userClause;
+        if (users == 1) {
+            userClause = String.format(USER_QUERY_TEMPLATE, usernames.get(0));
+        } else {
+            StringBuilder userList = new StringBuilder();
+            for (String user : usernames)
+                userList.append(userList.length() == 0 ? "" : ",").append(user);
+            userClause = String.format(BATCH_QUERY_TEMPLATE, userList);
+        }
+        return userClause + String.format(QUERY_TEMPLATE, startDate, endDate, "ASC");
+    }
+
+    @Benchmark
+    public String build() {
+        return uncached.build(usernames);
+    }
+
+    @Benchmark
+    public String buildCached() {
+        return cached.build(usernames);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import org.apache.commons.csv.CSVFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the time taken to produce a user's report against in-process stub JIRA servers, for varying result sizes
+ * and server latencies. Running with a single thread per domain approximates the original sequential loop, which
+ * allows it to be compared with the concurrent scheduler, and writing the files without writer threads allows the
+ * pipelined output to be compared with writing on the scheduling thread.
+ *
+ * @author Ryan Emerson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReportBenchmark {
+
+    private static final int NUMBER_OF_USERS = 8;
+
+    static {
+        // Without this the stub servers' headers and body are sent in separate packets and each response is delayed
+        // by Nagle's algorithm, which would add tens of milliseconds of artificial latency to every request
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    @Param({"50", "500"})
+    public int issuesPerUser;
+
+    @Param({"0", "20"})
+    public long latencyMillis;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({"0", "2"})
+    public int writerThreads;
+
+    private final List<String> users = new ArrayList<>();
+    private StubJiraServer jboss;
+    private StubJiraServer apache;
+    private DomainClientRegistry clients;
+    private Map<String, String> domains;
+    private Path outputDir;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        for (int i = 0; i < NUMBER_OF_USERS; i++)
+            users.add("user" + i);
+
+        jboss = new StubJiraServer("JBOSS", issuesPerUser, latencyMillis).setMaxPageSize(100);
+        apache = new StubJiraServer("APACHE", issuesPerUser, latencyMillis).setMaxPageSize(100);
+        domains = new LinkedHashMap<>();
+        domains.put("JBOSS", jboss.getUrl());
+        domains.put("APACHE", apache.getUrl());
+        clients = new DomainClientRegistry(threads, 30000).setMaxRequestRate(100000);
+        outputDir = Files.createTempDirectory("jira-reporter-benchmark");
+
+        // The scheduler's progress output would otherwise dominate the measurements
+        stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(stdout);
+        clients.close();
+        jboss.close();
+        apache.close();
+        try (Stream<Path> files = Files.walk(outputDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_USERS)
+    public void report() {
+        try (ReportScheduler scheduler = new ReportScheduler(domains, clients, "ORDER BY updated ASC",
+                CSVFormat.EXCEL, Integer.MAX_VALUE, threads, outputDir)) {
+            scheduler.setPageSize(100).setWriterThreads(writerThreads).run(users, "");
+        }
+    }
+}
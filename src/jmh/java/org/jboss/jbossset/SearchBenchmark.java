@@ -0,0 +1,79 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import net.rcarz.jiraclient.Issue;
+import net.rcarz.jiraclient.JiraException;
+import net.rcarz.jiraclient.RestClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a search page converted into the client's Issue objects with one converted directly into
+ * {@link IssueRecord}s. Run with <code>-prof gc</code> to compare the allocation per search.
+ *
+ * @author Ryan Emerson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SearchBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+    private static final String JQL = "(assignee = user0 OR reporter = user0) ORDER BY updated ASC";
+
+    private StubJiraServer server;
+    private DomainClientRegistry clients;
+    private RestClient client;
+
+    @Setup
+    public void setup() throws IOException {
+        server = new StubJiraServer("JBOSS", PAGE_SIZE, 0);
+        clients = new DomainClientRegistry(1, 30000);
+        client = clients.getClient(server.getUrl()).getRestClient();
+    }
+
+    @TearDown
+    public void tearDown() {
+        clients.close();
+        server.close();
+    }
+
+    @Benchmark
+    public Issue.SearchResult searchIssues() throws JiraException {
+        return Issue.search(client, JQL, null, PAGE_SIZE, 0);
+    }
+
+    @Benchmark
+    public SearchPage searchRecords() throws JiraException {
+        return SearchPage.search(client, JQL, IssueProcessor.getSearchFields(), PAGE_SIZE, 0);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import org.apache.commons.csv.CSVFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compares the time taken to report on a large list of users against an in-process stub JIRA server with injected
+ * latency, when searching sequentially, with a fixed pool of platform threads and with a virtual thread per search.
+ * The virtual mode only executes on virtual threads when the benchmark is run on JDK 21 or later, otherwise it
+ * measures the platform thread fallback.
+ *
+ * @author Ryan Emerson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class VirtualThreadBenchmark {
+
+    private static final int NUMBER_OF_USERS = 256;
+
+    @Param({"sequential", "platform", "virtual"})
+    public String mode;
+
+    @Param({"64"})
+    public int concurrency;
+
+    @Param({"20"})
+    public long latencyMillis;
+
+    private final List<String> users = new ArrayList<>();
+    private StubJiraServer jboss;
+    private DomainClientRegistry clients;
+    private Map<String, String> domains;
+    private Path outputDir;
+    private PrintStream stdout;
+    private int threads;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        for (int i = 0; i < NUMBER_OF_USERS; i++)
+            users.add("user" + i);
+
+        threads = mode.equals("sequential") ? 1 : concurrency;
+        jboss = new StubJiraServer("JBOSS", 10, latencyMillis);
+        domains = Collections.singletonMap("JBOSS", jboss.getUrl());
+        clients = new DomainClientRegistry(threads, 30000).setMaxRequestRate(100000);
+        outputDir = Files.createTempDirectory("jira-reporter-benchmark");
+
+        stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(stdout);
+        clients.close();
+        jboss.close();
+        try (Stream<Path> files = Files.walk(outputDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_USERS)
+    public void report() {
+        try (ReportScheduler scheduler = new ReportScheduler(domains, clients, "ORDER BY updated ASC",
+                CSVFormat.EXCEL, Integer.MAX_VALUE, threads, outputDir)) {
+            scheduler.setVirtualThreads(mode.equals("virtual")).run(users, "");
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fails requests to an unhealthy domain fast, rather than letting every search wait out the domain's timeouts in
+ * turn. The breaker opens after a number of consecutive failures, or when the domain fails its health probe, and
+ * rejects every request until the open period has elapsed. A single trial request is then permitted, which closes the
+ * breaker if it succeeds and opens it again if it fails.
+ *
+ * @author Ryan Emerson
+ */
+public class CircuitBreaker {
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private int consecutiveFailures;
+    private boolean open;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    /**
+     * @param failureThreshold the number of consecutive failures which open the breaker.
+     * @param openMillis       the time for which the breaker rejects requests before a trial request is permitted.
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * @return true if a request may be sent, in which case its outcome must be reported via {@link #onSuccess()} or
+     * {@link #onFailure()}.
+     */
+    public synchronized boolean allowRequest() {
+        if (!open)
+            return true;
+        if (trialInFlight || System.nanoTime() - openedAt < openNanos)
+            return false;
+        trialInFlight = true;
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        open = false;
+        trialInFlight = false;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (trialInFlight || consecutiveFailures >= failureThreshold)
+            trip();
+    }
+
+    /**
+     * Open the breaker regardless of the number of failures, such as when a domain fails its health probe.
+     */
+    public synchronized void trip() {
+        open = true;
+        openedAt = System.nanoTime();
+        trialInFlight = false;
+    }
+
+    /**
+     * @return true if requests are currently being rejected.
+     */
+    public synchronized boolean isOpen() {
+        return open && (trialInFlight || System.nanoTime() - openedAt < openNanos);
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the issues of every user and domain of a run to a single typed, columnar file, which is far quicker to load
+ * into analytics tools than one CSV per user. Each row contains the user, domain and role that the issue was
+ * retrieved for, followed by the issue's fields.
+ * <p>
+ * Rows are buffered into row groups which are written column by column. Columns with few distinct values, such as
+ * project, status and user names, are dictionary encoded, so each value is written once in the footer and every row
+ * only stores a variable length id. Timestamps are delta encoded against the previous row of the group. The file
+ * layout is:
+ * <pre>
+ * MAGIC
+ * row group*      rowCount, then each column's values for those rows
+ * footer          column names and types, total rows, row group count, the dictionary of each dictionary column
+ * footer length   8 bytes
+ * MAGIC
+ * </pre>
+ * All integers other than the footer length are unsigned LEB128 varints, negative deltas are zigzag encoded, and
+ * strings are prefixed with their UTF-8 length plus one, where zero represents null. Dictionary id zero is also
+ * reserved for null. Use {@link ColumnarReader} to read the file.
+ *
+ * @author Ryan Emerson
+ */
+public class ColumnarExporter implements AutoCloseable {
+
+    static final byte[] MAGIC = {'J', 'R', 'C', '1'};
+    static final int ROW_GROUP_SIZE = 64 * 1024;
+
+    static final String[] COLUMNS = {"user", "domain", "role", "key", "project", "summary", "status", "reporter",
+            "assignee", "created", "updated"};
+    static final ColumnType[] TYPES = {ColumnType.DICTIONARY, ColumnType.DICTIONARY, ColumnType.DICTIONARY,
+            ColumnType.STRING, ColumnType.DICTIONARY, ColumnType.STRING, ColumnType.DICTIONARY, ColumnType.DICTIONARY,
+            ColumnType.DICTIONARY, ColumnType.TIMESTAMP, ColumnType.TIMESTAMP};
+
+    private final DataOutputStream out;
+    private final List<Dictionary> dictionaries = new ArrayList<>();
+    private final int[][] ids = new int[COLUMNS.length][];
+    private final String[][] strings = new String[COLUMNS.length][];
+    private final long[][] timestamps = new long[COLUMNS.length][];
+    private int rows;
+    private long totalRows;
+    private int rowGroups;
+
+    public ColumnarExporter(Path file) throws IOException {
+        this(Files.newOutputStream(file));
+    }
+
+    ColumnarExporter(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        this.out.write(MAGIC);
+        for (int column = 0; column < COLUMNS.length; column++) {
+            switch (TYPES[column]) {
+                case DICTIONARY:
+                    ids[column] = new int[ROW_GROUP_SIZE];
+                    break;
+                case STRING:
+                    strings[column] = new String[ROW_GROUP_SIZE];
+                    break;
+                default:
+                    timestamps[column] = new long[ROW_GROUP_SIZE];
+            }
+            dictionaries.add(TYPES[column] == ColumnType.DICTIONARY ? new Dictionary() : null);
+        }
+    }
+
+    /**
+     * Add an issue retrieved for the specified user. The user's role is derived from the issue's assignee and
+     * reporter.
+     */
+    public void append(String user, String domain, IssueRecord issue) throws IOException {
+        int column = 0;
+        addValue(column++, user);
+        addValue(column++, domain);
+        addValue(column++, getRole(user, issue));
+        addValue(column++, issue.getKey());
+        addValue(column++, issue.getProject());
+        addValue(column++, issue.getSummary());
+        addValue(column++, issue.getStatus());
+        addValue(column++, issue.getReporter());
+        addValue(column++, issue.getAssignee());
+        timestamps[column++][rows] = issue.getCreated();
+        timestamps[column][rows] = issue.getUpdated();
+        if (++rows == ROW_GROUP_SIZE)
+            writeRowGroup();
+    }
+
+    public long getRows() {
+        return totalRows + rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rows > 0)
+                writeRowGroup();
+
+            ByteArrayOutputStream footer = new ByteArrayOutputStream();
+            writeVarint(footer, COLUMNS.length);
+            for (int column = 0; column < COLUMNS.length; column++) {
+                writeString(footer, COLUMNS[column]);
+                writeVarint(footer, TYPES[column].ordinal());
+            }
+            writeVarint(footer, totalRows);
+            writeVarint(footer, rowGroups);
+            for (Dictionary dictionary : dictionaries) {
+                if (dictionary != null) {
+                    writeVarint(footer, dictionary.values.size());
+                    for (String value : dictionary.values)
+                        writeString(footer, value);
+                }
+            }
+            footer.writeTo(out);
+            out.writeLong(footer.size());
+            out.write(MAGIC);
+        } finally {
+            out.close();
+        }
+    }
+
+    static String getRole(String user, IssueRecord issue) {
+        boolean assignee = user.equalsIgnoreCase(issue.getAssignee());
+        boolean reporter = user.equalsIgnoreCase(issue.getReporter());
+        if (assignee && reporter)
+            return "both";
+        return assignee ? "assignee" : reporter ? "reporter" : null;
+    }
+
+    private void addValue(int column, String value) {
+        if (TYPES[column] == ColumnType.DICTIONARY)
+            ids[column][rows] = dictionaries.get(column).getId(value);
+        else
+            strings[column][rows] = value;
+    }
+
+    private void writeRowGroup() throws IOException {
+        writeVarint(out, rows);
+        for (int column = 0; column < COLUMNS.length; column++) {
+            switch (TYPES[column]) {
+                case DICTIONARY:
+                    for (int row = 0; row < rows; row++)
+                        writeVarint(out, ids[column][row]);
+                    break;
+                case STRING:
+                    for (int row = 0; row < rows; row++) {
+                        writeString(out, strings[column][row]);
+                        strings[column][row] = null;
+                    }
+                    break;
+                default:
+                    long previous = 0;
+                    for (int row = 0; row < rows; row++) {
+                        long value = timestamps[column][row];
+                        long delta = value - previous;
+                        writeVarint(out, (delta << 1) ^ (delta >> 63));
+                        previous = value;
+                    }
+            }
+        }
+        totalRows += rows;
+        rowGroups++;
+        rows = 0;
+    }
+
+    static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarint(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0)
+                throw new IOException("Unexpected end of columnar file");
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed varint in columnar file");
+    }
+
+    static void writeString(OutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    enum ColumnType {
+        DICTIONARY, STRING, TIMESTAMP
+    }
+
+    private static class Dictionary {
+        final Map<String, Integer> ids = new HashMap<>();
+        final List<String> values = new ArrayList<>();
+
+        int getId(String value) {
+            if (value == null)
+                return 0;
+            Integer id = ids.get(value);
+            if (id == null) {
+                values.add(value);
+                id = values.size();
+                ids.put(value, id);
+            }
+            return id;
+        }
+    }
+}
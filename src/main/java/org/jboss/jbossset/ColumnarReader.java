@@ -0,0 +1,222 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads a file written by {@link ColumnarExporter}. The footer is read first, so that the dictionaries are available,
+ * then the row groups are decoded in order.
+ *
+ * @author Ryan Emerson
+ */
+public class ColumnarReader {
+
+    private static final int TRAILER_LENGTH = 8 + ColumnarExporter.MAGIC.length;
+
+    private final Path file;
+    private final String[] columns;
+    private final ColumnarExporter.ColumnType[] types;
+    private final String[][] dictionaries;
+    private final long rows;
+    private final long rowGroups;
+    private final long footerOffset;
+
+    public ColumnarReader(Path file) throws IOException {
+        this.file = file;
+        try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+            long size = channel.size();
+            if (size < ColumnarExporter.MAGIC.length + TRAILER_LENGTH)
+                throw new IOException("Not a columnar issue file: " + file);
+
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_LENGTH);
+            channel.position(size - TRAILER_LENGTH);
+            readFully(channel, trailer);
+            long footerLength = trailer.getLong(0);
+            byte[] magic = Arrays.copyOfRange(trailer.array(), 8, TRAILER_LENGTH);
+            if (!Arrays.equals(magic, ColumnarExporter.MAGIC) || footerLength > size - TRAILER_LENGTH)
+                throw new IOException("Not a columnar issue file: " + file);
+
+            footerOffset = size - TRAILER_LENGTH - footerLength;
+            ByteBuffer footer = ByteBuffer.allocate((int) footerLength);
+            channel.position(footerOffset);
+            readFully(channel, footer);
+            InputStream in = new ByteArrayInputStream(footer.array());
+
+            columns = new String[(int) ColumnarExporter.readVarint(in)];
+            types = new ColumnarExporter.ColumnType[columns.length];
+            for (int column = 0; column < columns.length; column++) {
+                columns[column] = readString(in);
+                types[column] = ColumnarExporter.ColumnType.values()[(int) ColumnarExporter.readVarint(in)];
+            }
+            if (!Arrays.equals(columns, ColumnarExporter.COLUMNS) || !Arrays.equals(types, ColumnarExporter.TYPES))
+                throw new IOException("Unsupported columnar issue file schema: " + Arrays.toString(columns));
+
+            rows = ColumnarExporter.readVarint(in);
+            rowGroups = ColumnarExporter.readVarint(in);
+            dictionaries = new String[columns.length][];
+            for (int column = 0; column < columns.length; column++) {
+                if (types[column] == ColumnarExporter.ColumnType.DICTIONARY) {
+                    String[] values = new String[(int) ColumnarExporter.readVarint(in) + 1];
+                    for (int id = 1; id < values.length; id++)
+                        values[id] = readString(in);
+                    dictionaries[column] = values;
+                }
+            }
+        }
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public List<String> getColumns() {
+        return Arrays.asList(columns);
+    }
+
+    /**
+     * @return the distinct values of a dictionary encoded column.
+     */
+    public List<String> getDictionary(String column) {
+        int index = Arrays.asList(columns).indexOf(column);
+        if (index < 0 || dictionaries[index] == null)
+            throw new IllegalArgumentException("Not a dictionary column: " + column);
+        return Arrays.asList(dictionaries[index]).subList(1, dictionaries[index].length);
+    }
+
+    /**
+     * Decode every row of the file. Each row group is decoded in its entirety, so the rows of at most one row group
+     * are held in memory in addition to the returned list.
+     */
+    public List<Row> readRows() throws IOException {
+        List<Row> result = new ArrayList<>((int) Math.min(rows, Integer.MAX_VALUE));
+        try (InputStream file = new BufferedInputStream(Files.newInputStream(this.file), 64 * 1024)) {
+            DataInputStream in = new DataInputStream(file);
+            byte[] magic = new byte[ColumnarExporter.MAGIC.length];
+            in.readFully(magic);
+            for (long group = 0; group < rowGroups; group++)
+                readRowGroup(in, result);
+        }
+        return result;
+    }
+
+    private void readRowGroup(InputStream in, List<Row> result) throws IOException {
+        int groupRows = (int) ColumnarExporter.readVarint(in);
+        Object[][] values = new Object[columns.length][groupRows];
+        for (int column = 0; column < columns.length; column++) {
+            long previous = 0;
+            for (int row = 0; row < groupRows; row++) {
+                switch (types[column]) {
+                    case DICTIONARY:
+                        values[column][row] = dictionaries[column][(int) ColumnarExporter.readVarint(in)];
+                        break;
+                    case STRING:
+                        values[column][row] = readString(in);
+                        break;
+                    default:
+                        long zigzag = ColumnarExporter.readVarint(in);
+                        previous += (zigzag >>> 1) ^ -(zigzag & 1);
+                        values[column][row] = previous;
+                }
+            }
+        }
+        for (int row = 0; row < groupRows; row++) {
+            int column = 0;
+            String user = (String) values[column++][row];
+            String domain = (String) values[column++][row];
+            String role = (String) values[column++][row];
+            IssueRecord issue = new IssueRecord((String) values[column++][row], (String) values[column++][row],
+                    (String) values[column++][row], (String) values[column++][row], (String) values[column++][row],
+                    (String) values[column++][row], (Long) values[column++][row], (Long) values[column][row]);
+            result.add(new Row(user, domain, role, issue));
+        }
+    }
+
+    private static String readString(InputStream in) throws IOException {
+        int length = (int) ColumnarExporter.readVarint(in);
+        if (length == 0)
+            return null;
+        byte[] bytes = new byte[length - 1];
+        for (int read = 0; read < bytes.length; ) {
+            int n = in.read(bytes, read, bytes.length - read);
+            if (n < 0)
+                throw new IOException("Unexpected end of columnar file");
+            read += n;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void readFully(SeekableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0)
+                throw new IOException("Unexpected end of columnar file");
+        }
+    }
+
+    /**
+     * A single issue of the run, as retrieved for a user from a domain.
+     */
+    public static class Row {
+        private final String user;
+        private final String domain;
+        private final String role;
+        private final IssueRecord issue;
+
+        Row(String user, String domain, String role, IssueRecord issue) {
+            this.user = user;
+            this.domain = domain;
+            this.role = role;
+            this.issue = issue;
+        }
+
+        public String getUser() {
+            return user;
+        }
+
+        public String getDomain() {
+            return domain;
+        }
+
+        /**
+         * @return "assignee", "reporter" or "both", depending on the user's association with the issue.
+         */
+        public String getRole() {
+            return role;
+        }
+
+        public IssueRecord getIssue() {
+            return issue;
+        }
+    }
+}
@@ -34,30 +34,78 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 /**
  * @author Ryan Emerson
  */
 public class CommandLineParser {
 
+    private static final String CONNECT_TIMEOUT_SUFFIX = ".connectTimeout";
+    private static final String READ_TIMEOUT_SUFFIX = ".readTimeout";
+
     private final Map<String, CSVFormat> validCSVFormats;
     private final String[] args;
     private final Options options = new Options();
-    private List<String> usernames;
+    private Iterable<String> usernames;
     private LocalDate startDate = LocalDate.of(1990, 1, 1);
     private LocalDate endDate = LocalDate.now();
     private String issueOrder = "ASC";
     private CSVFormat csvFormat = CSVFormat.EXCEL;
     private int issueLimit = 50;
+    private int pageSize = 50;
+    private int threads = 4;
+    private int poolSize = -1;
+    private int idleTimeout = 30;
+    private int rateLimit = 10;
+    private int maxRetries = 3;
+    private int failureThreshold = 5;
+    private int breakerTimeout = 30;
+    private boolean batch = false;
+    private boolean gzip = false;
+    private boolean virtualThreads = false;
+    private boolean comments = false;
+    private boolean resume = false;
+    private int writerThreads = 2;
+    private int maxQueryLength = 2000;
     private Map<String, String> domains = new HashMap<>();
+    private Map<String, Integer> connectTimeouts = new HashMap<>();
+    private Map<String, Integer> readTimeouts = new HashMap<>();
+    private Path cacheDir;
+    private Path metricsFile;
+    private int storeSize = 0;
+    private int shardSize = 0;
+    private Path columnarFile;
+    private Path summaryFile;
+    private Path recordDir;
+    private Path replayDir;
+    private int syntheticIssues = 0;
+    private int stubLatency = 0;
+    private int stubJitter = 0;
+    private int stubErrorRate = 0;
+    private Path workDir;
+    private int workers = 0;
+    private int workerId = -1;
+    private boolean coordinator = false;
+    private int shards = 0;
+    private int workerTimeout = 30;
+    private Path outputDir = Paths.get("");
+    private int serverPort = -1;
+    private int schedule = 0;
+    private int metricsInterval = 0;
 
     public CommandLineParser(String[] args) {
         this.args = args;
@@ -80,7 +128,19 @@ public class CommandLineParser {
             return;
         }
 
-        usernames = getValidUsernames(cmd);
+        if (cmd.hasOption("serve"))
+            serverPort = getValidNonNegativeInteger(cmd.getOptionValue("serve"), "serve");
+
+        if (cmd.hasOption("schedule")) {
+            schedule = getValidPositiveInteger(cmd.getOptionValue("schedule"), "schedule");
+            if (serverPort < 0)
+                throw new ParseException("A schedule can only be specified in combination with the serve option");
+        }
+
+        // A server without a schedule only runs the reports which are requested via its API
+        boolean usersRequired = serverPort < 0 || schedule > 0 || cmd.hasOption("usernames") ||
+                cmd.hasOption("userFile");
+        usernames = usersRequired ? getValidUsernames(cmd) : Collections.<String>emptyList();
         domains = getValidDomains(cmd);
 
         if (cmd.hasOption("startDate"))
@@ -95,21 +155,171 @@ public class CommandLineParser {
         if (cmd.hasOption("lifo"))
             issueOrder = "DESC";
 
+        if (cmd.hasOption("batch"))
+            batch = true;
+
+        if (cmd.hasOption("gzip"))
+            gzip = true;
+
+        if (cmd.hasOption("virtualThreads"))
+            virtualThreads = true;
+
+        if (cmd.hasOption("resume"))
+            resume = true;
+
+        if (cmd.hasOption("comments"))
+            comments = true;
+
+        if (cmd.hasOption("writerThreads"))
+            writerThreads = getValidNonNegativeInteger(cmd.getOptionValue("writerThreads"), "writerThreads");
+
         if (cmd.hasOption("csvFormat"))
             csvFormat = getValidCSVFormat(cmd.getOptionValue("csvFormat"));
 
         if (cmd.hasOption("issueLimit"))
             issueLimit = getValidIssueLimit(cmd.getOptionValue("issueLimit"));
+
+        if (cmd.hasOption("pageSize"))
+            pageSize = getValidPositiveInteger(cmd.getOptionValue("pageSize"), "pageSize");
+
+        if (cmd.hasOption("threads"))
+            threads = getValidPositiveInteger(cmd.getOptionValue("threads"), "threads");
+
+        if (cmd.hasOption("poolSize"))
+            poolSize = getValidPositiveInteger(cmd.getOptionValue("poolSize"), "poolSize");
+
+        if (cmd.hasOption("idleTimeout"))
+            idleTimeout = getValidPositiveInteger(cmd.getOptionValue("idleTimeout"), "idleTimeout");
+
+        if (cmd.hasOption("rateLimit"))
+            rateLimit = getValidPositiveInteger(cmd.getOptionValue("rateLimit"), "rateLimit");
+
+        if (cmd.hasOption("maxRetries"))
+            maxRetries = getValidNonNegativeInteger(cmd.getOptionValue("maxRetries"), "maxRetries");
+
+        if (cmd.hasOption("failureThreshold"))
+            failureThreshold = getValidPositiveInteger(cmd.getOptionValue("failureThreshold"), "failureThreshold");
+
+        if (cmd.hasOption("breakerTimeout"))
+            breakerTimeout = getValidNonNegativeInteger(cmd.getOptionValue("breakerTimeout"), "breakerTimeout");
+
+        if (cmd.hasOption("cacheDir"))
+            cacheDir = Paths.get(cmd.getOptionValue("cacheDir"));
+
+        if (cmd.hasOption("outputDir"))
+            outputDir = Paths.get(cmd.getOptionValue("outputDir"));
+
+        if (cmd.hasOption("columnarFile"))
+            columnarFile = Paths.get(cmd.getOptionValue("columnarFile"));
+
+        if (cmd.hasOption("summaryFile"))
+            summaryFile = Paths.get(cmd.getOptionValue("summaryFile"));
+
+        if (cmd.hasOption("storeSize"))
+            storeSize = getValidNonNegativeInteger(cmd.getOptionValue("storeSize"), "storeSize");
+
+        if (cmd.hasOption("shardSize"))
+            shardSize = getValidNonNegativeInteger(cmd.getOptionValue("shardSize"), "shardSize");
+
+        if (cmd.hasOption("metricsFile"))
+            metricsFile = Paths.get(cmd.getOptionValue("metricsFile"));
+
+        if (cmd.hasOption("metricsInterval"))
+            metricsInterval = getValidNonNegativeInteger(cmd.getOptionValue("metricsInterval"), "metricsInterval");
+
+        if (cmd.hasOption("maxQueryLength"))
+            maxQueryLength = getValidPositiveInteger(cmd.getOptionValue("maxQueryLength"), "maxQueryLength");
+
+        parseStubOptions(cmd);
+        parseDistributedOptions(cmd);
+    }
+
+    private void parseDistributedOptions(CommandLine cmd) throws ParseException {
+        if (cmd.hasOption("workers"))
+            workers = getValidPositiveInteger(cmd.getOptionValue("workers"), "workers");
+
+        if (cmd.hasOption("worker"))
+            workerId = getValidNonNegativeInteger(cmd.getOptionValue("worker"), "worker");
+
+        if (cmd.hasOption("coordinator"))
+            coordinator = true;
+
+        if (cmd.hasOption("workDir"))
+            workDir = Paths.get(cmd.getOptionValue("workDir"));
+
+        if (cmd.hasOption("workerTimeout"))
+            workerTimeout = getValidPositiveInteger(cmd.getOptionValue("workerTimeout"), "workerTimeout");
+
+        // Enough shards per worker that the shards of a dead worker are spread over several live workers
+        shards = workers * 8;
+        if (cmd.hasOption("shards"))
+            shards = getValidPositiveInteger(cmd.getOptionValue("shards"), "shards");
+
+        if (workerId < 0 && !coordinator)
+            return;
+        if (workerId >= 0 && coordinator)
+            throw new ParseException("A process cannot be both the coordinator and a worker");
+        if (workers == 0 || workDir == null)
+            throw new ParseException("The workers and workDir options are required by the coordinator and workers");
+        if (workerId >= workers)
+            throw new ParseException("Invalid worker value: " + workerId + ". Workers are numbered from 0 to " +
+                    (workers - 1));
+        if (serverPort >= 0 || columnarFile != null || summaryFile != null || resume)
+            throw new ParseException("The serve, columnarFile, summaryFile and resume options cannot be used by " +
+                    "the coordinator or workers");
+    }
+
+    private void parseStubOptions(CommandLine cmd) throws ParseException {
+        if (cmd.hasOption("record"))
+            recordDir = Paths.get(cmd.getOptionValue("record"));
+
+        if (cmd.hasOption("replay"))
+            replayDir = Paths.get(cmd.getOptionValue("replay"));
+
+        if (cmd.hasOption("synthetic"))
+            syntheticIssues = getValidPositiveInteger(cmd.getOptionValue("synthetic"), "synthetic");
+
+        if (replayDir != null && syntheticIssues > 0)
+            throw new ParseException("The replay and synthetic options cannot be specified together");
+
+        if (cmd.hasOption("stubLatency"))
+            stubLatency = getValidNonNegativeInteger(cmd.getOptionValue("stubLatency"), "stubLatency");
+
+        if (cmd.hasOption("stubJitter"))
+            stubJitter = getValidNonNegativeInteger(cmd.getOptionValue("stubJitter"), "stubJitter");
+
+        if (cmd.hasOption("stubErrorRate")) {
+            stubErrorRate = getValidNonNegativeInteger(cmd.getOptionValue("stubErrorRate"), "stubErrorRate");
+            if (stubErrorRate > 100)
+                throw new ParseException("Invalid stubErrorRate value: " + stubErrorRate +
+                        ". A percentage is expected");
+        }
     }
 
     public Options getOptions() {
         return options;
     }
 
-    public List<String> getUsernames() {
+    /**
+     * @return the usernames, which are streamed from the user file as they are iterated if one was specified.
+     */
+    public Iterable<String> getUsers() {
         return usernames;
     }
 
+    /**
+     * @return every username, which requires the whole user file to be read into memory.
+     */
+    public List<String> getUsernames() {
+        if (!(usernames instanceof List)) {
+            List<String> users = new ArrayList<>();
+            for (String user : usernames)
+                users.add(user);
+            usernames = users;
+        }
+        return (List<String>) usernames;
+    }
+
     public LocalDate getStartDate() {
         return startDate;
     }
@@ -122,6 +332,13 @@ public class CommandLineParser {
         return issueOrder;
     }
 
+    /**
+     * @return the CSV formats which can be specified by name via the csvFormat option.
+     */
+    public Map<String, CSVFormat> getValidCSVFormats() {
+        return Collections.unmodifiableMap(validCSVFormats);
+    }
+
     public CSVFormat getCSVFormat() {
         return csvFormat;
     }
@@ -130,10 +347,298 @@ public class CommandLineParser {
         return issueLimit;
     }
 
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return the maximum number of pooled connections per domain, which defaults to the number of search threads.
+     */
+    public int getPoolSize() {
+        return poolSize > 0 ? poolSize : threads;
+    }
+
+    /**
+     * @return the number of seconds after which an idle pooled connection is closed.
+     */
+    public int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * @return the maximum number of requests per second sent to each domain.
+     */
+    public int getRateLimit() {
+        return rateLimit;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * @return the number of consecutive failed requests to a domain which open its circuit breaker.
+     */
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    /**
+     * @return the number of seconds for which an open circuit breaker fails a domain's searches before a single
+     * search is tried again.
+     */
+    public int getBreakerTimeout() {
+        return breakerTimeout;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    /**
+     * @return true if the progress journal of an interrupted run should be resumed.
+     */
+    public boolean isResume() {
+        return resume;
+    }
+
+    /**
+     * @return true if each issue's record should include the number of comments written by the user.
+     */
+    public boolean isComments() {
+        return comments;
+    }
+
+    /**
+     * @return true if each search should be executed on its own virtual thread.
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * @return the number of threads which write the output files, or zero if they are written by the main thread.
+     */
+    public int getWriterThreads() {
+        return writerThreads;
+    }
+
+    public boolean isBatch() {
+        return batch;
+    }
+
+    public int getMaxQueryLength() {
+        return maxQueryLength;
+    }
+
+    /**
+     * @return the directory of the persistent issue cache, or null if issues should not be cached.
+     */
+    public Path getCacheDir() {
+        return cacheDir;
+    }
+
+    /**
+     * @return the directory which the users' CSV files are written to.
+     */
+    public Path getOutputDir() {
+        return outputDir;
+    }
+
+    /**
+     * Restrict a report requested from a {@link ReportServer} to the domains of the server, with its output directory
+     * resolved against the server's output directory.
+     *
+     * @throws ParseException if the report's output directory is absolute or outside of the server's output directory,
+     *                        or a username would place the user's file outside of the output directory.
+     */
+    void restrictTo(CommandLineParser server) throws ParseException {
+        Path relative = outputDir.normalize();
+        if (outputDir.isAbsolute() || relative.startsWith(".."))
+            throw new ParseException("The outputDir of a remote report must be a relative path within the server's " +
+                    "output directory");
+        // Each user's file is named after the user, so a username must not be able to select another directory
+        for (String user : getUsernames()) {
+            if (!isFileName(user))
+                throw new ParseException("Invalid username " + user + ". The usernames of a remote report cannot " +
+                        "contain path separators or '..'");
+        }
+        outputDir = server.outputDir.resolve(relative);
+        domains = server.domains;
+        connectTimeouts = server.connectTimeouts;
+        readTimeouts = server.readTimeouts;
+    }
+
+    /**
+     * @return the local port of the report server, zero for any free port, or -1 if a single report should be run.
+     */
+    public int getServerPort() {
+        return serverPort;
+    }
+
+    /**
+     * @return the number of minutes between each scheduled report of the server, or zero if no report is scheduled.
+     */
+    public int getSchedule() {
+        return schedule;
+    }
+
+    /**
+     * @return the file which the issues of every user and domain are written to in a single columnar file, or null if
+     * only the per user CSV files should be written.
+     */
+    public Path getColumnarFile() {
+        return columnarFile;
+    }
+
+    /**
+     * @return the directory which every response of each domain is recorded to, or null if responses should not be
+     * recorded.
+     */
+    public Path getRecordDir() {
+        return recordDir;
+    }
+
+    /**
+     * @return the directory of the recorded responses which each domain should be replaced by, or null if the
+     * recorded responses should not be replayed.
+     */
+    public Path getReplayDir() {
+        return replayDir;
+    }
+
+    /**
+     * @return the number of synthetic issues per user of the stub server which each domain should be replaced by, or
+     * zero if the domains should not be replaced by synthetic issues.
+     */
+    public int getSyntheticIssues() {
+        return syntheticIssues;
+    }
+
+    /**
+     * @return the latency in milliseconds of every response of a stub server.
+     */
+    public int getStubLatency() {
+        return stubLatency;
+    }
+
+    /**
+     * @return the maximum random delay in milliseconds which is added to the latency of a stub server.
+     */
+    public int getStubJitter() {
+        return stubJitter;
+    }
+
+    /**
+     * @return the percentage of requests which a stub server responds to with an error.
+     */
+    public int getStubErrorRate() {
+        return stubErrorRate;
+    }
+
+    /**
+     * @return the directory shared by the coordinator and workers of a distributed run, or null if the run is not
+     * distributed.
+     */
+    public Path getWorkDir() {
+        return workDir;
+    }
+
+    /**
+     * @return the number of workers of a distributed run.
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * @return the id of this worker of a distributed run, or -1 if this process is not a worker.
+     */
+    public int getWorkerId() {
+        return workerId;
+    }
+
+    public boolean isCoordinator() {
+        return coordinator;
+    }
+
+    /**
+     * @return the number of shards which the users of a distributed run are partitioned into.
+     */
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * @return the number of seconds without a heartbeat after which a worker is considered dead and its shards are
+     * reassigned.
+     */
+    public int getWorkerTimeout() {
+        return workerTimeout;
+    }
+
+    /**
+     * @return the CSV file which the number of issues of each user by domain, project, status and role is written to,
+     * or null if no summary should be written.
+     */
+    public Path getSummaryFile() {
+        return summaryFile;
+    }
+
+    /**
+     * @return the maximum number of issues held in the run's issue store, or zero if no store should be used.
+     */
+    public int getStoreSize() {
+        return storeSize;
+    }
+
+    /**
+     * @return the maximum number of issues of a search's date window before it is split, or zero if searches are
+     * not split.
+     */
+    public int getShardSize() {
+        return shardSize;
+    }
+
+    /**
+     * @return the file which the run's metrics are written to, or null if metrics should not be written.
+     */
+    public Path getMetricsFile() {
+        return metricsFile;
+    }
+
+    /**
+     * @return the number of seconds between each write of the metrics file during a run, or zero if the metrics are
+     * only written once the run has completed.
+     */
+    public int getMetricsInterval() {
+        return metricsInterval;
+    }
+
     public Map<String, String> getDomains() {
         return domains;
     }
 
+    /**
+     * @return the connect timeout in milliseconds of each domain whose timeout is set by the domains file, keyed by
+     * the domain's name.
+     */
+    public Map<String, Integer> getConnectTimeouts() {
+        return connectTimeouts;
+    }
+
+    /**
+     * @return the read timeout in milliseconds of each domain whose timeout is set by the domains file, keyed by the
+     * domain's name.
+     */
+    public Map<String, Integer> getReadTimeouts() {
+        return readTimeouts;
+    }
+
     private LocalDate getValidLocalDate(String date, String optionName) throws ParseException {
         try {
             LocalDate localDate = LocalDate.parse(date);
@@ -145,7 +650,20 @@ public class CommandLineParser {
         }
     }
 
-    private List<String> getValidUsernames(CommandLine cmd) throws ParseException {
+    /**
+     * @return true if the name can only refer to a file within the directory it is resolved against.
+     */
+    private static boolean isFileName(String name) {
+        if (name.contains("/") || name.contains("\\") || name.contains(File.separator) || name.contains(".."))
+            return false;
+        try {
+            return !Paths.get(name).isAbsolute();
+        } catch (InvalidPathException e) {
+            return false;
+        }
+    }
+
+    private Iterable<String> getValidUsernames(CommandLine cmd) throws ParseException {
         boolean userFileSet = cmd.hasOption("userFile");
         boolean usernamesSet = cmd.hasOption("usernames");
         if (!userFileSet && !usernamesSet)
@@ -163,13 +681,9 @@ public class CommandLineParser {
         if (!new File(url).exists())
             throw new ParseException("The specified file <" + url + "> does not exist");
 
-        List<String> users;
-        try {
-            users = Files.readAllLines(Paths.get(url));
-        } catch (IOException e) {
+        if (!Files.isReadable(Paths.get(url)))
             throw new ParseException("The specified file <" + url + "> cannot be opened");
-        }
-        return users;
+        return new UserRoster(Paths.get(url));
     }
 
     private Map<String, String> getValidDomains(CommandLine cmd) throws ParseException {
@@ -195,8 +709,29 @@ public class CommandLineParser {
                 throw new ParseException("Default domains file could not be read: " + e);
             }
         }
-        @SuppressWarnings("unchecked")
-        Map<String, String> map = (Map) properties;
+        // Keys of the form <domain>.connectTimeout and <domain>.readTimeout configure the timeouts of a domain
+        Map<String, String> map = new HashMap<>();
+        connectTimeouts = new HashMap<>();
+        readTimeouts = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key);
+            if (key.endsWith(CONNECT_TIMEOUT_SUFFIX))
+                connectTimeouts.put(key.substring(0, key.length() - CONNECT_TIMEOUT_SUFFIX.length()),
+                        getValidNonNegativeInteger(value, key));
+            else if (key.endsWith(READ_TIMEOUT_SUFFIX))
+                readTimeouts.put(key.substring(0, key.length() - READ_TIMEOUT_SUFFIX.length()),
+                        getValidNonNegativeInteger(value, key));
+            else
+                map.put(key, value);
+        }
+        Set<String> configured = new HashSet<>(connectTimeouts.keySet());
+        configured.addAll(readTimeouts.keySet());
+        for (String domain : configured) {
+            if (!map.containsKey(domain))
+                throw new ParseException("A timeout is set for the unknown domain " + domain);
+        }
+        if (map.isEmpty())
+            throw new ParseException("The specified file does not contain any domain pairs");
         return map;
     }
 
@@ -209,13 +744,37 @@ public class CommandLineParser {
     }
 
     private int getValidIssueLimit(String issueLimit) throws ParseException {
+        if (issueLimit.equalsIgnoreCase("all"))
+            return Integer.MAX_VALUE;
+
         try {
-            int limit = new Integer(issueLimit);
+            int limit = Integer.parseInt(issueLimit);
             if (limit > 0)
                 return limit;
         } catch (NumberFormatException e) {
         }
-        throw new ParseException("Invalid issueLimit value: " + issueLimit + ". A positive integer is expected");
+        throw new ParseException("Invalid issueLimit value: " + issueLimit
+                + ". A positive integer or 'all' is expected");
+    }
+
+    private int getValidNonNegativeInteger(String value, String optionName) throws ParseException {
+        try {
+            int intValue = Integer.parseInt(value);
+            if (intValue >= 0)
+                return intValue;
+        } catch (NumberFormatException e) {
+        }
+        throw new ParseException("Invalid " + optionName + " value: " + value + ". A non-negative integer is expected");
+    }
+
+    private int getValidPositiveInteger(String value, String optionName) throws ParseException {
+        try {
+            int intValue = Integer.parseInt(value);
+            if (intValue > 0)
+                return intValue;
+        } catch (NumberFormatException e) {
+        }
+        throw new ParseException("Invalid " + optionName + " value: " + value + ". A positive integer is expected");
     }
 
     private void addOptions() {
@@ -225,6 +784,20 @@ public class CommandLineParser {
         addCSVTypeOption();
         addIssueLimitOption();
         addDomainFileOption();
+        addThreadsOption();
+        addMaxQueryLengthOption();
+        addConnectionPoolOptions();
+        addCacheDirOption();
+        addRateLimitOptions();
+        addMetricsOptions();
+        addStoreSizeOption();
+        addShardSizeOption();
+        addColumnarFileOption();
+        addSummaryFileOption();
+        addWriterThreadsOption();
+        addServerOptions();
+        addStubOptions();
+        addDistributedOptions();
     }
 
     private void addUsernameOptions() {
@@ -266,6 +839,16 @@ public class CommandLineParser {
 
     private void addBooleanFlags() {
         options.addOption(new Option("lifo", "JIRA issues are output from the most recently updated issue."));
+        options.addOption(new Option("batch", "Search for many users with a single JQL query per domain."));
+        options.addOption(new Option("gzip", "Gzip compress each user's CSV file."));
+        options.addOption(new Option("resume", "resume", false, "Resume an interrupted run with the same arguments " +
+                "from its progress journal in the output directory, skipping the users and domains which it " +
+                "completed."));
+        options.addOption(new Option("comments", "comments", false, "Add a column with the number of comments " +
+                "written by the user on each issue, which are retrieved with the search results."));
+        options.addOption(new Option("vt", "virtualThreads", false, "Execute each search on its own virtual thread, " +
+                "with the threads option bounding the concurrent searches of each domain. Requires JDK 21, " +
+                "otherwise platform threads are used."));
         options.addOption(new Option("h", "help", false, "Display this help and exit."));
     }
 
@@ -283,7 +866,15 @@ public class CommandLineParser {
         options.addOption(Option.builder("l")
                 .argName("issueLimit")
                 .longOpt("issueLimit")
-                .desc("The maximum number of JIRA issues that will be returned for each domain.")
+                .desc("The maximum number of JIRA issues that will be returned for each domain, or 'all'.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(Option.builder("p")
+                .argName("pageSize")
+                .longOpt("pageSize")
+                .desc("The number of JIRA issues requested from a domain at a time.")
                 .required(false)
                 .numberOfArgs(1)
                 .build());
@@ -293,7 +884,300 @@ public class CommandLineParser {
         options.addOption(Option.builder("d")
                 .argName("domainFile")
                 .longOpt("domainFile")
-                .desc("A properties file which contains a key name and url for each of the domains to be searched.")
+                .desc("A properties file which contains a key name and url for each of the domains to be searched. " +
+                      "The connect and read timeouts of a domain, in milliseconds, can be set by the keys " +
+                      "<name>.connectTimeout and <name>.readTimeout.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+    }
+
+    private void addThreadsOption() {
+        options.addOption(Option.builder("t")
+                .argName("threads")
+                .longOpt("threads")
+                .desc("The maximum number of concurrent searches that will be executed against each domain.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+    }
+
+    private void addMaxQueryLengthOption() {
+        options.addOption(Option.builder("q")
+                .argName("maxQueryLength")
+                .longOpt("maxQueryLength")
+                .desc("The maximum length of a batched JQL query. Only used in conjunction with the -batch flag.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+    }
+
+    private void addConnectionPoolOptions() {
+        options.addOption(Option.builder("ps")
+                .argName("poolSize")
+                .longOpt("poolSize")
+                .desc("The maximum number of pooled connections to each domain. Defaults to the number of threads.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(Option.builder("it")
+                .argName("idleTimeout")
+                .longOpt("idleTimeout")
+                .desc("The number of seconds after which an idle pooled connection is closed.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+    }
+
+    private void addCacheDirOption() {
+        options.addOption(Option.builder("cd")
+                .argName("cacheDir")
+                .longOpt("cacheDir")
+                .desc("A directory in which retrieved issues are cached, so that subsequent runs only search for " +
+                      "recently updated issues.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+    }
+
+    private void addRateLimitOptions() {
+        options.addOption(Option.builder("r")
+                .argName("rateLimit")
+                .longOpt("rateLimit")
+                .desc("The maximum number of requests per second sent to each domain. The rate is automatically " +
+                      "reduced whilst a domain is throttling requests.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(Option.builder("mr")
+                .argName("maxRetries")
+                .longOpt("maxRetries")
+                .desc("The number of times a throttled or failed request is retried before it is reported as failed.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(Option.builder("ft")
+                .argName("failureThreshold")
+                .longOpt("failureThreshold")
+                .desc("The number of consecutive connection failures, timeouts or server errors of a domain after " +
+                      "which its searches fail immediately. Defaults to 5.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(Option.builder("bt")
+                .argName("breakerTimeout")
+                .longOpt("breakerTimeout")
+                .desc("The number of seconds for which the searches of an unhealthy domain fail immediately, before " +
+                      "a single search is tried again. Defaults to 30.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+    }
+
+    private void addMetricsOptions() {
+        options.addOption(Option.builder("mf")
+                .argName("metricsFile")
+                .longOpt("metricsFile")
+                .desc("A file which request latencies, response sizes and CSV write times are written to in the " +
+                      "Prometheus text format.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(Option.builder("mi")
+                .argName("metricsInterval")
+                .longOpt("metricsInterval")
+                .desc("The number of seconds between each update of the metrics file during a run. Default is 0, " +
+                      "the metrics file is only written once the run has completed.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+    }
+
+    private void addStoreSizeOption() {
+        options.addOption(Option.builder("ss")
+                .argName("storeSize")
+                .longOpt("storeSize")
+                .desc("The maximum number of issues kept in memory so that issues shared by several users are only " +
+                      "fetched in full once. Each page is then searched for issue keys first, which costs an extra " +
+                      "request whenever a page contains issues that are not stored. Default is 0, no store is used.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+    }
+
+    private void addShardSizeOption() {
+        options.addOption(Option.builder("sh")
+                .argName("shardSize")
+                .longOpt("shardSize")
+                .desc("Split each search into windows of update times which hold at most this many issues, and " +
+                      "retrieve the windows concurrently. The number of issues in each window is first counted with " +
+                      "an extra request. Default is 0, searches are not split.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+    }
+
+    private void addColumnarFileOption() {
+        options.addOption(Option.builder("cf")
+                .argName("columnarFile")
+                .longOpt("columnarFile")
+                .desc("A file which the issues of all users and domains are also written to, in a single " +
+                      "dictionary encoded columnar format with user, domain and role columns.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+    }
+
+    private void addSummaryFileOption() {
+        options.addOption(Option.builder("sf")
+                .argName("summaryFile")
+                .longOpt("summaryFile")
+                .desc("A CSV file which the number of issues of each user by domain, project, status and role is " +
+                      "written to, counted as the issues are written rather than by reading the user files again.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+    }
+
+    private void addWriterThreadsOption() {
+        options.addOption(Option.builder("wt")
+                .argName("writerThreads")
+                .longOpt("writerThreads")
+                .desc("The number of threads which write the users' CSV files, so that disk writes overlap with the " +
+                      "searches. Default is 2, 0 writes the files on the main thread.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+    }
+
+    private void addServerOptions() {
+        options.addOption(Option.builder("od")
+                .argName("outputDir")
+                .longOpt("outputDir")
+                .desc("The directory which the users' CSV files are written to. Default is the current directory.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(Option.builder("serve")
+                .argName("port")
+                .longOpt("serve")
+                .desc("Run as a server which keeps its connections and caches between reports. Reports are " +
+                      "requested by posting the usual arguments to http://localhost:<port>/report, the connection, " +
+                      "cache, store and metrics options of a request are ignored in favour of the server's.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(Option.builder("schedule")
+                .argName("minutes")
+                .longOpt("schedule")
+                .desc("Run the report specified by the server's own arguments every <minutes> minutes.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+    }
+
+    private void addStubOptions() {
+        options.addOption(Option.builder("record")
+                .argName("dir")
+                .longOpt("record")
+                .desc("Record every response of each domain to a compressed fixture file in <dir>, which can be " +
+                      "replayed by the replay option.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(Option.builder("replay")
+                .argName("dir")
+                .longOpt("replay")
+                .desc("Replace each domain with a local stub server which replays the responses recorded in <dir>.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(Option.builder("synthetic")
+                .argName("issuesPerUser")
+                .longOpt("synthetic")
+                .desc("Replace each domain with a local stub server which returns <issuesPerUser> synthetic issues " +
+                      "for every user.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(Option.builder("stubLatency")
+                .argName("millis")
+                .longOpt("stubLatency")
+                .desc("The latency of every response of a replay or synthetic stub server. Default is 0.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(Option.builder("stubJitter")
+                .argName("millis")
+                .longOpt("stubJitter")
+                .desc("The maximum random delay added to the latency of a stub server. Default is 0.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(Option.builder("stubErrorRate")
+                .argName("percent")
+                .longOpt("stubErrorRate")
+                .desc("The percentage of requests which a stub server responds to with a 503 error. Default is 0.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+    }
+
+    private void addDistributedOptions() {
+        options.addOption(Option.builder("workDir")
+                .argName("dir")
+                .longOpt("workDir")
+                .desc("The directory shared by the coordinator and workers of a distributed run.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(Option.builder("workers")
+                .argName("count")
+                .longOpt("workers")
+                .desc("The number of worker processes which the users of a distributed run are partitioned between.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(Option.builder("worker")
+                .argName("id")
+                .longOpt("worker")
+                .desc("Run as worker <id> of a distributed run, searching the users of the shards assigned to it.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(new Option("coordinator", "coordinator", false, "Coordinate a distributed run, " +
+                "reassigning the shards of dead workers and merging the workers' manifests once every shard is " +
+                "complete."));
+
+        options.addOption(Option.builder("shards")
+                .argName("count")
+                .longOpt("shards")
+                .desc("The number of shards which the users of a distributed run are hashed into. Default is eight " +
+                      "per worker.")
+                .required(false)
+                .numberOfArgs(1)
+                .build());
+
+        options.addOption(Option.builder("workerTimeout")
+                .argName("seconds")
+                .longOpt("workerTimeout")
+                .desc("The number of seconds without a heartbeat after which a worker's shards are reassigned. " +
+                      "Default is 30.")
                 .required(false)
                 .numberOfArgs(1)
                 .build());
@@ -0,0 +1,217 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.QuoteMode;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A replacement for {@link org.apache.commons.csv.CSVPrinter} which produces byte identical output, but writes each
+ * value straight to the underlying writer without allocating. The quoting and escaping rules of the format are
+ * resolved once on construction, including a table of the characters which require a value to be quoted or escaped,
+ * rather than being looked up for every value.
+ * <p>
+ * Formats which print a header or header comments are not supported, as the reports print their own headers.
+ *
+ * @author Ryan Emerson
+ */
+public class CsvRecordWriter implements Flushable, Closeable {
+
+    private static final char CR = '\r';
+    private static final char LF = '\n';
+    private static final char COMMENT = '#';
+    private static final char SP = ' ';
+
+    private final Writer out;
+    private final char delimiter;
+    private final boolean quoteCharacterSet;
+    private final char quoteCharacter;
+    private final boolean escapeCharacterSet;
+    private final char escapeCharacter;
+    private final QuoteMode quoteMode;
+    private final String recordSeparator;
+    private final String nullString;
+    // The characters which force a value to be quoted, or escaped if the format has no quote character
+    private final boolean[] special = new boolean[128];
+    private final StringBuilder specialNonAscii = new StringBuilder();
+    private boolean newRecord = true;
+
+    public CsvRecordWriter(Writer out, CSVFormat format) {
+        if (format.getHeader() != null || format.getHeaderComments() != null)
+            throw new IllegalArgumentException("CSV formats with headers are not supported");
+
+        this.out = out;
+        this.delimiter = format.getDelimiter();
+        this.quoteCharacterSet = format.isQuoteCharacterSet();
+        this.quoteCharacter = quoteCharacterSet ? format.getQuoteCharacter() : 0;
+        this.escapeCharacterSet = format.isEscapeCharacterSet();
+        this.escapeCharacter = escapeCharacterSet ? format.getEscapeCharacter() : 0;
+        this.quoteMode = format.getQuoteMode() == null ? QuoteMode.MINIMAL : format.getQuoteMode();
+        this.recordSeparator = format.getRecordSeparator();
+        this.nullString = format.getNullString() == null ? "" : format.getNullString();
+
+        if (quoteCharacterSet && quoteMode == QuoteMode.NONE && !escapeCharacterSet)
+            throw new IllegalArgumentException("No escape character is set for quote mode NONE");
+
+        markSpecial(CR);
+        markSpecial(LF);
+        markSpecial(delimiter);
+        if (quoteCharacterSet && quoteMode != QuoteMode.NONE)
+            markSpecial(quoteCharacter);
+        else if (escapeCharacterSet)
+            markSpecial(escapeCharacter);
+    }
+
+    /**
+     * Print a single value, which is converted to a String in the same way as by
+     * {@link org.apache.commons.csv.CSVPrinter#print(Object)}.
+     */
+    public void print(Object value) throws IOException {
+        String str = value == null ? nullString : value.toString();
+        if (!newRecord)
+            out.write(delimiter);
+
+        if (quoteCharacterSet) {
+            if (quoteMode == QuoteMode.NONE)
+                printAndEscape(str);
+            else
+                printAndQuote(value, str);
+        } else if (escapeCharacterSet) {
+            printAndEscape(str);
+        } else {
+            out.write(str);
+        }
+        newRecord = false;
+    }
+
+    public void printRecord(Object... values) throws IOException {
+        for (Object value : values)
+            print(value);
+        println();
+    }
+
+    public void println() throws IOException {
+        if (recordSeparator != null)
+            out.write(recordSeparator);
+        newRecord = true;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void printAndQuote(Object value, String str) throws IOException {
+        boolean quote;
+        switch (quoteMode) {
+            case ALL:
+                quote = true;
+                break;
+            case NON_NUMERIC:
+                quote = !(value instanceof Number);
+                break;
+            default:
+                quote = requiresQuotes(str);
+        }
+
+        if (!quote) {
+            out.write(str);
+            return;
+        }
+
+        out.write(quoteCharacter);
+        int start = 0;
+        for (int pos = 0; pos < str.length(); pos++) {
+            // Embedded quote characters are doubled
+            if (str.charAt(pos) == quoteCharacter) {
+                out.write(str, start, pos + 1 - start);
+                start = pos;
+            }
+        }
+        out.write(str, start, str.length() - start);
+        out.write(quoteCharacter);
+    }
+
+    private boolean requiresQuotes(String str) {
+        int len = str.length();
+        if (len == 0) {
+            // An empty first value is quoted, as it may be the only value of the record
+            return newRecord;
+        }
+
+        char c = str.charAt(0);
+        if (newRecord && (c < '0' || c > '9' && c < 'A' || c > 'Z' && c < 'a' || c > 'z'))
+            return true;
+        if (c <= COMMENT)
+            return true;
+        for (int pos = 0; pos < len; pos++) {
+            if (isSpecial(str.charAt(pos)))
+                return true;
+        }
+        // Leading spaces are covered by the comment check above, trailing spaces must also be preserved
+        return str.charAt(len - 1) <= SP;
+    }
+
+    private void printAndEscape(String str) throws IOException {
+        int start = 0;
+        int len = str.length();
+        for (int pos = 0; pos < len; pos++) {
+            char c = str.charAt(pos);
+            if (isSpecial(c)) {
+                if (pos > start)
+                    out.write(str, start, pos - start);
+                out.write(escapeCharacter);
+                out.write(c == LF ? 'n' : c == CR ? 'r' : c);
+                start = pos + 1;
+            }
+        }
+        if (len > start)
+            out.write(str, start, len - start);
+    }
+
+    private boolean isSpecial(char c) {
+        if (c < special.length)
+            return special[c];
+        for (int i = 0; i < specialNonAscii.length(); i++) {
+            if (specialNonAscii.charAt(i) == c)
+                return true;
+        }
+        return false;
+    }
+
+    private void markSpecial(char c) {
+        if (c < special.length)
+            special[c] = true;
+        else
+            specialNonAscii.append(c);
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import net.rcarz.jiraclient.JiraException;
+import net.rcarz.jiraclient.Resource;
+import net.rcarz.jiraclient.RestClient;
+import net.rcarz.jiraclient.RestException;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ClientConnectionOperator;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.OperatedClientConnection;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.DefaultClientConnectionOperator;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The client used for every request to a single domain. All requests share a pool of keep-alive connections, are
+ * paced by the domain's {@link RateLimiter} and transient failures are retried according to a {@link RetryPolicy}.
+ * Connection failures, timeouts and server errors are counted by the domain's {@link CircuitBreaker}, so that once a
+ * domain is unhealthy its searches fail fast instead of each waiting out the timeouts, and the latency of the
+ * domain's responses is tracked as an exponentially weighted moving average.
+ *
+ * @author Ryan Emerson
+ */
+public class DomainClient {
+
+    private static final DnsResolver DEFAULT_RESOLVER = new SystemDefaultDnsResolver();
+    // The weight of each new response in the latency average
+    private static final double LATENCY_WEIGHT = 0.2;
+
+    private final DomainClientRegistry.ConnectionStats stats = new DomainClientRegistry.ConnectionStats();
+    private final PoolingClientConnectionManager connectionManager;
+    private final RestClient restClient;
+    private final RateLimiter rateLimiter;
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreaker circuitBreaker;
+    private final RunMetrics.DomainMetrics metrics;
+    private final String url;
+    private double latencyMillis = -1;
+    // The time at which the current thread's last response headers were received, interceptors are invoked on the
+    // thread which executes the request
+    private final ThreadLocal<Long> responseReceivedNanos = new ThreadLocal<>();
+
+    /**
+     * @param connectTimeoutMillis the timeout for establishing a connection, or zero for no timeout.
+     * @param readTimeoutMillis    the timeout whilst waiting for response data, or zero for no timeout.
+     * @param recorder             the recorder which every response is recorded to, or null if responses are not
+     *                             recorded.
+     */
+    DomainClient(final String url, int poolSize, int connectTimeoutMillis, int readTimeoutMillis,
+                 RateLimiter rateLimiter, RetryPolicy retryPolicy, CircuitBreaker circuitBreaker,
+                 final RunMetrics.DomainMetrics metrics, final FixtureRecorder recorder) {
+        this.url = url;
+        this.rateLimiter = rateLimiter;
+        this.retryPolicy = retryPolicy;
+        this.circuitBreaker = circuitBreaker;
+        this.metrics = metrics;
+        final DnsResolver dnsResolver = new DnsResolver() {
+            @Override
+            public InetAddress[] resolve(String host) throws UnknownHostException {
+                long start = System.nanoTime();
+                try {
+                    return DEFAULT_RESOLVER.resolve(host);
+                } finally {
+                    metrics.recordDnsLookup(System.nanoTime() - start);
+                }
+            }
+        };
+        this.connectionManager = new PoolingClientConnectionManager(SchemeRegistryFactory.createDefault()) {
+            @Override
+            protected ClientConnectionOperator createConnectionOperator(SchemeRegistry registry) {
+                return new DefaultClientConnectionOperator(registry, dnsResolver) {
+                    @Override
+                    public void openConnection(OperatedClientConnection conn, HttpHost target, InetAddress local,
+                                               HttpContext context, HttpParams params) throws IOException {
+                        stats.connectionsOpened.incrementAndGet();
+                        super.openConnection(conn, target, local, context, params);
+                    }
+                };
+            }
+        };
+        // All of a domain's requests share a single route, so the per route limit is the effective pool size
+        connectionManager.setMaxTotal(poolSize);
+        connectionManager.setDefaultMaxPerRoute(poolSize);
+
+        DefaultHttpClient httpClient = new DefaultHttpClient(connectionManager);
+        HttpConnectionParams.setConnectionTimeout(httpClient.getParams(), connectTimeoutMillis);
+        HttpConnectionParams.setSoTimeout(httpClient.getParams(), readTimeoutMillis);
+        httpClient.addRequestInterceptor(new HttpRequestInterceptor() {
+            @Override
+            public void process(HttpRequest request, HttpContext context) throws HttpException, IOException {
+                stats.requests.incrementAndGet();
+            }
+        });
+        httpClient.addResponseInterceptor(new HttpResponseInterceptor() {
+            @Override
+            public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
+                responseReceivedNanos.set(System.nanoTime());
+                HttpEntity entity = response.getEntity();
+                if (entity != null)
+                    response.setEntity(new CountingEntity(entity, metrics));
+                if (recorder != null)
+                    record(recorder, url, response, context);
+
+                int status = response.getStatusLine().getStatusCode();
+                if (RetryPolicy.isRetryable(status))
+                    DomainClient.this.rateLimiter.onThrottled(getRetryAfterMillis(response));
+                else if (status < 400)
+                    DomainClient.this.rateLimiter.onSuccess();
+            }
+        });
+        restClient = new RestClient(httpClient, URI.create(url));
+    }
+
+    public RestClient getRestClient() {
+        return restClient;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public DomainClientRegistry.ConnectionStats getStats() {
+        return stats;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @return the moving average of the domain's response latency in milliseconds, or -1 if the domain has not yet
+     * responded.
+     */
+    public synchronized double getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    /**
+     * Request the domain's server info, which is cheap for the domain to serve, to check that the domain is healthy
+     * and to measure its latency before it is searched. A domain which cannot be reached within its timeouts, or
+     * which responds with a server error, has its circuit breaker opened.
+     *
+     * @return true if the domain is healthy.
+     */
+    public boolean probe() throws InterruptedException {
+        rateLimiter.acquire();
+        long start = System.nanoTime();
+        try {
+            // The response is not parsed, any status other than a server error shows that the domain is healthy
+            HttpResponse response = restClient.getHttpClient().execute(
+                    new HttpGet(restClient.buildURI(Resource.getBaseUri() + "serverInfo")));
+            EntityUtils.consume(response.getEntity());
+            if (response.getStatusLine().getStatusCode() >= 500) {
+                circuitBreaker.trip();
+                return false;
+            }
+        } catch (IOException | URISyntaxException e) {
+            circuitBreaker.trip();
+            return false;
+        }
+        recordLatency(System.nanoTime() - start);
+        return true;
+    }
+
+    /**
+     * Search the domain, retrying throttled and failed requests.
+     *
+     * @see SearchPage#search(RestClient, String, String, int, int)
+     */
+    public SearchPage search(String jql, String fields, int maxResults, int startAt)
+            throws JiraException, InterruptedException {
+        for (int retry = 1; ; retry++) {
+            acquire();
+            long start = System.nanoTime();
+            boolean domainFailure = false;
+            try {
+                SearchPage page = SearchPage.search(restClient, jql, fields, maxResults, startAt);
+                recordResponse(start);
+                return page;
+            } catch (JiraException e) {
+                metrics.recordError();
+                domainFailure = isDomainFailure(e);
+                if (domainFailure)
+                    recordLatency(System.nanoTime() - start);
+                if (retry > retryPolicy.getMaxRetries() || !RetryPolicy.isRetryable(e))
+                    throw e;
+                stats.retries.incrementAndGet();
+            } finally {
+                // Any other response, such as a rejected query or throttling, shows that the domain is healthy
+                if (domainFailure)
+                    circuitBreaker.onFailure();
+                else
+                    circuitBreaker.onSuccess();
+            }
+            Thread.sleep(retryPolicy.getDelayMillis(retry));
+        }
+    }
+
+    private void acquire() throws JiraException, InterruptedException {
+        // The breaker is checked before waiting for the rate limiter, so that queued searches fail fast
+        if (!circuitBreaker.isOpen()) {
+            rateLimiter.acquire();
+            if (circuitBreaker.allowRequest())
+                return;
+        }
+        throw new JiraException("Domain " + url + " is unavailable, its circuit breaker is open");
+    }
+
+    private void recordResponse(long start) {
+        Long received = responseReceivedNanos.get();
+        long end = System.nanoTime();
+        if (received != null)
+            metrics.recordResponse(received - start, end - received);
+        responseReceivedNanos.remove();
+        recordLatency(end - start);
+    }
+
+    private synchronized void recordLatency(long nanos) {
+        double millis = nanos / 1e6;
+        latencyMillis = latencyMillis < 0 ? millis : latencyMillis + LATENCY_WEIGHT * (millis - latencyMillis);
+    }
+
+    /**
+     * @return true if the failure was caused by the domain being unreachable, timing out or failing, rather than by
+     * the request being rejected.
+     */
+    private static boolean isDomainFailure(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RestException)
+                return ((RestException) cause).getHttpStatusCode() >= 500;
+            if (cause instanceof IOException)
+                return true;
+        }
+        return false;
+    }
+
+    void evictIdleConnections(long idleTimeoutMillis) {
+        connectionManager.closeExpiredConnections();
+        connectionManager.closeIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void shutdown() {
+        connectionManager.shutdown();
+    }
+
+    /**
+     * Buffer the response body, so that it can be recorded as well as parsed.
+     */
+    private static void record(FixtureRecorder recorder, String url, HttpResponse response, HttpContext context)
+            throws IOException {
+        HttpRequest request = (HttpRequest) context.getAttribute(ExecutionContext.HTTP_REQUEST);
+        URI uri = URI.create(request.getRequestLine().getUri());
+        String path = uri.getRawQuery() == null ? uri.getRawPath() : uri.getRawPath() + "?" + uri.getRawQuery();
+        HttpEntity entity = response.getEntity();
+        byte[] body = entity == null ? new byte[0] : EntityUtils.toByteArray(entity);
+        if (entity != null)
+            response.setEntity(new ByteArrayEntity(body, ContentType.get(entity)));
+        Header retryAfter = response.getFirstHeader("Retry-After");
+        recorder.record(url, path, response.getStatusLine().getStatusCode(),
+                retryAfter == null ? -1 : (int) TimeUnit.MILLISECONDS.toSeconds(getRetryAfterMillis(response)), body);
+    }
+
+    private static long getRetryAfterMillis(HttpResponse response) {
+        Header header = response.getFirstHeader("Retry-After");
+        if (header == null)
+            return 0;
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(header.getValue().trim()));
+        } catch (NumberFormatException e) {
+            // An HTTP date is not worth parsing, the rate limiter and backoff will still slow requests down
+            return 0;
+        }
+    }
+
+    /**
+     * Counts the bytes of a response body as it is consumed, which works for chunked responses that have no
+     * Content-Length.
+     */
+    private static class CountingEntity extends HttpEntityWrapper {
+        private final RunMetrics.DomainMetrics metrics;
+
+        CountingEntity(HttpEntity entity, RunMetrics.DomainMetrics metrics) {
+            super(entity);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new FilterInputStream(super.getContent()) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0)
+                        metrics.recordBytesReceived(1);
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int read = super.read(b, off, len);
+                    if (read > 0)
+                        metrics.recordBytesReceived(read);
+                    return read;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A registry of {@link DomainClient}s keyed by domain url. Each domain has a single client for the duration of a run,
+ * backed by its own pool of keep-alive connections, so that the connection setup and TLS handshake costs are paid
+ * once per pooled connection rather than once per search. Connections which have been idle for longer than the
+ * configured timeout are periodically evicted from the pools.
+ * <p>
+ * Each domain's connect and read timeouts can be configured separately, and the health of each domain can be probed
+ * before it is first searched, so that a domain which cannot be reached fails fast from the start of a run.
+ *
+ * @author Ryan Emerson
+ */
+public class DomainClientRegistry implements AutoCloseable {
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+    public static final int DEFAULT_READ_TIMEOUT = 60000;
+
+    private final Map<String, DomainClient> clients = new LinkedHashMap<>();
+    private final Map<String, int[]> timeouts = new HashMap<>();
+    private final Set<String> probed = new HashSet<>();
+    private final int poolSize;
+    private final long idleTimeoutMillis;
+    private final ScheduledExecutorService evictor;
+    private double maxRequestRate = 10;
+    private RetryPolicy retryPolicy = new RetryPolicy(3, 1000, 30000);
+    private int failureThreshold = 5;
+    private long breakerOpenMillis = 30000;
+    private RunMetrics metrics = new RunMetrics();
+    private FixtureRecorder recorder;
+
+    public DomainClientRegistry(int poolSize, long idleTimeoutMillis) {
+        this.poolSize = poolSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "idle-connection-evictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long period = Math.max(1, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdleConnections();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param maxRequestRate the maximum number of requests per second sent to each domain.
+     */
+    public DomainClientRegistry setMaxRequestRate(double maxRequestRate) {
+        this.maxRequestRate = maxRequestRate;
+        return this;
+    }
+
+    public DomainClientRegistry setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    /**
+     * @param failureThreshold the number of consecutive failures which open a domain's circuit breaker.
+     * @param openMillis       the time for which an open circuit breaker rejects the domain's requests.
+     */
+    public DomainClientRegistry setCircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.breakerOpenMillis = openMillis;
+        return this;
+    }
+
+    /**
+     * Set the timeouts of a domain, which only apply to its client if it has not yet been created.
+     *
+     * @param connectTimeoutMillis the timeout for establishing a connection, or zero for no timeout.
+     * @param readTimeoutMillis    the timeout whilst waiting for response data, or zero for no timeout.
+     */
+    public synchronized DomainClientRegistry setTimeouts(String url, int connectTimeoutMillis, int readTimeoutMillis) {
+        timeouts.put(url, new int[] {connectTimeoutMillis, readTimeoutMillis});
+        return this;
+    }
+
+    /**
+     * @param metrics the metrics which each domain's response times and sizes are recorded in.
+     */
+    public DomainClientRegistry setMetrics(RunMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * @param recorder the recorder which every response of the clients created afterwards is recorded to.
+     */
+    public DomainClientRegistry setRecorder(FixtureRecorder recorder) {
+        this.recorder = recorder;
+        return this;
+    }
+
+    public RunMetrics getMetrics() {
+        return metrics;
+    }
+
+    public synchronized DomainClient getClient(String url) {
+        DomainClient client = clients.get(url);
+        if (client == null) {
+            int[] timeout = timeouts.get(url);
+            client = new DomainClient(url, poolSize, timeout == null ? DEFAULT_CONNECT_TIMEOUT : timeout[0],
+                    timeout == null ? DEFAULT_READ_TIMEOUT : timeout[1], new RateLimiter(maxRequestRate),
+                    retryPolicy, new CircuitBreaker(failureThreshold, breakerOpenMillis),
+                    metrics.getDomainMetrics(url), recorder);
+            clients.put(url, client);
+        }
+        return client;
+    }
+
+    /**
+     * Concurrently probe each of the domains which have not been probed before, so that the health of every domain is
+     * known within the longest of their timeouts rather than the sum of them.
+     *
+     * @return whether each probed domain url responded, in the order of the given urls.
+     */
+    public Map<String, Boolean> probe(Collection<String> urls) throws InterruptedException {
+        Map<String, DomainClient> unprobed = new LinkedHashMap<>();
+        synchronized (this) {
+            for (String url : urls) {
+                if (probed.add(url))
+                    unprobed.put(url, getClient(url));
+            }
+        }
+        Map<String, Boolean> health = new LinkedHashMap<>();
+        if (unprobed.isEmpty())
+            return health;
+
+        ExecutorService executor = Executors.newFixedThreadPool(unprobed.size());
+        try {
+            Map<String, Future<Boolean>> results = new LinkedHashMap<>();
+            for (Map.Entry<String, DomainClient> entry : unprobed.entrySet()) {
+                final DomainClient client = entry.getValue();
+                results.put(entry.getKey(), executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws InterruptedException {
+                        return client.probe();
+                    }
+                }));
+            }
+            for (Map.Entry<String, Future<Boolean>> result : results.entrySet())
+                health.put(result.getKey(), result.getValue().get());
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return health;
+    }
+
+    /**
+     * @return the connection statistics of each domain url that a client has been created for.
+     */
+    public synchronized Map<String, ConnectionStats> getStats() {
+        Map<String, ConnectionStats> stats = new LinkedHashMap<>();
+        for (Map.Entry<String, DomainClient> entry : clients.entrySet())
+            stats.put(entry.getKey(), entry.getValue().getStats());
+        return Collections.unmodifiableMap(stats);
+    }
+
+    @Override
+    public synchronized void close() {
+        evictor.shutdownNow();
+        for (DomainClient client : clients.values())
+            client.shutdown();
+        clients.clear();
+    }
+
+    private synchronized void evictIdleConnections() {
+        for (DomainClient client : clients.values())
+            client.evictIdleConnections(idleTimeoutMillis);
+    }
+
+    /**
+     * Counters which show how effectively a domain's connections are being reused.
+     */
+    public static class ConnectionStats {
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong connectionsOpened = new AtomicLong();
+        final AtomicLong retries = new AtomicLong();
+
+        public long getRequests() {
+            return requests.get();
+        }
+
+        public long getConnectionsOpened() {
+            return connectionsOpened.get();
+        }
+
+        public long getConnectionsReused() {
+            return Math.max(0, getRequests() - getConnectionsOpened());
+        }
+
+        public long getRetries() {
+            return retries.get();
+        }
+
+        @Override
+        public String toString() {
+            return getRequests() + " requests, " + getConnectionsOpened() + " connections opened, " +
+                    getConnectionsReused() + " connections reused, " + getRetries() + " retries";
+        }
+    }
+}
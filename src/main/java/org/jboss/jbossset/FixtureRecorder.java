@@ -0,0 +1,158 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records every response received from a domain to a fixture file, so that a run can later be replayed without a
+ * network by a {@link StubJiraServer}. Each domain has its own gzip compressed fixture file in the recording
+ * directory, which is a sequence of records of the form:
+ * <pre>
+ * uri           the path and query of the request, as a modified UTF-8 string
+ * status        the status code of the response, 4 bytes
+ * retry after   the Retry-After seconds of the response, or -1 if it had no such header, 4 bytes
+ * body length   4 bytes, followed by the response body
+ * </pre>
+ * A fixture which was truncated by an interrupted recording is read up to its last complete record.
+ *
+ * @author Ryan Emerson
+ */
+public class FixtureRecorder implements AutoCloseable {
+
+    static final String FILE_SUFFIX = ".fixture.gz";
+
+    private final Path directory;
+    private final Map<String, DataOutputStream> fixtures = new HashMap<>();
+
+    public FixtureRecorder(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * @return the name of the fixture file of the domain url, which is derived from its host and port.
+     */
+    public static String getFileName(String url) {
+        URI uri = URI.create(url);
+        String name = uri.getPort() < 0 ? uri.getHost() : uri.getHost() + "_" + uri.getPort();
+        return name.replaceAll("[^A-Za-z0-9._-]", "_") + FILE_SUFFIX;
+    }
+
+    /**
+     * @param uri the path and query of the request that the response was received for.
+     */
+    public synchronized void record(String url, String uri, int status, int retryAfterSeconds, byte[] body)
+            throws IOException {
+        DataOutputStream out = fixtures.get(url);
+        if (out == null) {
+            out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(
+                    Files.newOutputStream(directory.resolve(getFileName(url)))), 64 * 1024));
+            fixtures.put(url, out);
+        }
+        out.writeUTF(uri);
+        out.writeInt(status);
+        out.writeInt(retryAfterSeconds);
+        out.writeInt(body.length);
+        out.write(body);
+    }
+
+    /**
+     * @return the responses of the fixture file keyed by the path and query of their request, in the order in which
+     * they were received.
+     */
+    public static Map<String, List<Response>> read(Path file) throws IOException {
+        Map<String, List<Response>> responses = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(
+                Files.newInputStream(file)), 64 * 1024))) {
+            while (true) {
+                String uri;
+                try {
+                    uri = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                Response response;
+                try {
+                    int status = in.readInt();
+                    int retryAfterSeconds = in.readInt();
+                    byte[] body = new byte[in.readInt()];
+                    in.readFully(body);
+                    response = new Response(status, retryAfterSeconds, body);
+                } catch (EOFException e) {
+                    break;
+                }
+                List<Response> list = responses.get(uri);
+                if (list == null) {
+                    list = new ArrayList<>(1);
+                    responses.put(uri, list);
+                }
+                list.add(response);
+            }
+        } catch (EOFException e) {
+            // The gzip trailer of an interrupted recording is missing, every complete record has been read
+        }
+        return responses;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException failure = null;
+        for (DataOutputStream out : fixtures.values()) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        fixtures.clear();
+        if (failure != null)
+            throw failure;
+    }
+
+    public static class Response {
+        final int status;
+        final int retryAfterSeconds;
+        final byte[] body;
+
+        Response(int status, int retryAfterSeconds, byte[] body) {
+            this.status = status;
+            this.retryAfterSeconds = retryAfterSeconds;
+            this.body = body;
+        }
+    }
+}
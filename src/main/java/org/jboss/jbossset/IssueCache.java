@@ -0,0 +1,408 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * A persistent cache of the issues retrieved from each domain, which allows subsequent runs to only request the issues
+ * that have been updated since a user was last successfully synchronised.
+ * <p>
+ * Each domain has an append only <code>&lt;domain&gt;.records</code> file, where a later record for an issue key
+ * supersedes any earlier record, and a <code>&lt;domain&gt;.sync</code> checkpoint file containing the date range that
+ * has been synchronised for each user. Records are appended as soon as they are received and a user's checkpoint is
+ * only written once all of their issues have been received, so an interrupted run resumes from the last checkpoint
+ * rather than starting again. The records file is compacted when it is closed if it mostly contains superseded
+ * records.
+ * <p>
+ * Note that an issue which is no longer associated with a user, for example because it has been reassigned, is only
+ * removed from the user's cached results once it has been retrieved again.
+ *
+ * @author Ryan Emerson
+ */
+public class IssueCache implements AutoCloseable {
+
+    private static final CSVFormat FORMAT = CSVFormat.RFC4180;
+
+    private final Path directory;
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private final Comparator<IssueRecord> order;
+    private final LocalDate runDate = LocalDate.now();
+    // Shared by every run of the cache and used as the lock which guards all of the cached state
+    private final Map<String, DomainCache> domainCaches;
+
+    /**
+     * @param startDate  the start date of the current run.
+     * @param endDate    the end date of the current run.
+     * @param descending true if the current run outputs the most recently updated issues first.
+     */
+    public IssueCache(Path directory, LocalDate startDate, LocalDate endDate, boolean descending) throws IOException {
+        this(Files.createDirectories(directory), startDate, endDate, descending, new HashMap<String, DomainCache>());
+    }
+
+    private IssueCache(Path directory, LocalDate startDate, LocalDate endDate, boolean descending,
+                       Map<String, DomainCache> domainCaches) {
+        this.directory = directory;
+        this.domainCaches = domainCaches;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        Comparator<IssueRecord> ascending = new Comparator<IssueRecord>() {
+            @Override
+            public int compare(IssueRecord r1, IssueRecord r2) {
+                return Long.compare(r1.getUpdated(), r2.getUpdated());
+            }
+        };
+        this.order = descending ? Collections.reverseOrder(ascending) : ascending;
+    }
+
+    /**
+     * Create a cache for another run, which shares the records already loaded by this cache. This allows a long
+     * running process to report on different date ranges without reloading the cache files for every report.
+     */
+    public IssueCache forRun(LocalDate startDate, LocalDate endDate, boolean descending) {
+        return new IssueCache(directory, startDate, endDate, descending, domainCaches);
+    }
+
+    /**
+     * Write all appended records to disk, without closing the cache.
+     */
+    public void flush() throws IOException {
+        synchronized (domainCaches) {
+            for (DomainCache cache : domainCaches.values()) {
+                if (cache.printer != null)
+                    cache.printer.flush();
+            }
+        }
+    }
+
+    /**
+     * @return the JQL clause which restricts a search of the specified users to the issues updated since their last
+     * synchronisation, or null if any of the users must be searched for in full.
+     */
+    public String getDeltaClause(String domain, Collection<String> users) throws IOException {
+        synchronized (domainCaches) {
+            DomainCache cache = getDomainCache(domain);
+            LocalDate since = null;
+            for (String user : users) {
+                SyncState state = cache.syncStates.get(user);
+                // The cached records can only be reused if they cover the start of this run's date range
+                if (state == null || startDate.isBefore(state.from))
+                    return null;
+                // Issues are only retrieved up to the end of the synchronised range, so any issue created or updated
+                // after it may be missing from the cache
+                if (since == null || state.to.isBefore(since))
+                    since = state.to;
+            }
+            // Overlap the previous synchronisation by a day, as the server may be in a different time zone
+            return since == null ? null : JqlQueryBuilder.updatedSince(since.minusDays(1));
+        }
+    }
+
+    /**
+     * @return the cached records associated with the specified users that fall within the date range of the current
+     * run, in the order that they should be output.
+     */
+    public List<IssueRecord> getRecords(String domain, Collection<String> users) throws IOException {
+        synchronized (domainCaches) {
+            long start = toEpochMilli(startDate);
+            long end = toEpochMilli(endDate);
+            List<IssueRecord> records = new ArrayList<>();
+            for (IssueRecord record : getDomainCache(domain).records.values()) {
+                // Mirror the date conditions of the JQL query used by the reporter
+                boolean afterStart = record.getUpdated() >= start || record.getCreated() >= start;
+                boolean beforeEnd = record.getUpdated() < end || record.getCreated() < end;
+                if (afterStart && beforeEnd && isAssociated(record, users))
+                    records.add(record);
+            }
+            Collections.sort(records, order);
+            return records;
+        }
+    }
+
+    /**
+     * Merge freshly retrieved records with cached records, with fresh records replacing cached records of the same key.
+     */
+    public List<IssueRecord> merge(List<IssueRecord> cached, List<IssueRecord> fresh) {
+        Set<String> freshKeys = new HashSet<>();
+        for (IssueRecord record : fresh)
+            freshKeys.add(record.getKey());
+
+        List<IssueRecord> merged = new ArrayList<>(cached.size() + fresh.size());
+        for (IssueRecord record : cached)
+            if (!freshKeys.contains(record.getKey()))
+                merged.add(record);
+        merged.addAll(fresh);
+        Collections.sort(merged, order);
+        return merged;
+    }
+
+    public void append(String domain, IssueRecord record) throws IOException {
+        synchronized (domainCaches) {
+            DomainCache cache = getDomainCache(domain);
+            cache.records.put(record.getKey(), record);
+            printRecord(cache.printer(), record);
+            cache.recordsInLog++;
+        }
+    }
+
+    /**
+     * Record that all issues of the specified users have been retrieved for the current run's date range.
+     */
+    public void checkpoint(String domain, Collection<String> users) throws IOException {
+        synchronized (domainCaches) {
+            DomainCache cache = getDomainCache(domain);
+            if (cache.printer != null)
+                cache.printer.flush();
+
+            // A run whose date range ends before today has not retrieved the issues created or updated since its end
+            LocalDate to = min(endDate, runDate);
+            for (String user : users) {
+                if (!to.isAfter(startDate))
+                    continue;
+                SyncState previous = cache.syncStates.get(user);
+                // The range covered by the previous synchronisation can only be extended if the ranges are contiguous
+                if (previous != null && !startDate.isAfter(previous.to) && !previous.from.isAfter(to)) {
+                    cache.syncStates.put(user, new SyncState(min(previous.from, startDate), max(previous.to, to)));
+                } else {
+                    cache.syncStates.put(user, new SyncState(startDate, to));
+                }
+            }
+
+            Properties properties = new Properties();
+            for (Map.Entry<String, SyncState> entry : cache.syncStates.entrySet())
+                properties.setProperty(entry.getKey(), entry.getValue().from + "," + entry.getValue().to);
+
+            Path syncFile = directory.resolve(domain + ".sync");
+            Path tmpFile = directory.resolve(domain + ".sync.tmp");
+            try (Writer writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+                properties.store(writer, null);
+            }
+            Files.move(tmpFile, syncFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (domainCaches) {
+            for (Map.Entry<String, DomainCache> entry : domainCaches.entrySet()) {
+                DomainCache cache = entry.getValue();
+                if (cache.printer != null)
+                    cache.printer.close();
+                if (cache.recordsInLog > 2 * cache.records.size())
+                    compact(entry.getKey(), cache);
+            }
+            domainCaches.clear();
+        }
+    }
+
+    private boolean isAssociated(IssueRecord record, Collection<String> users) {
+        for (String user : users)
+            if (record.isAssociatedWith(user))
+                return true;
+        return false;
+    }
+
+    private void compact(String domain, DomainCache cache) throws IOException {
+        Path tmpFile = directory.resolve(domain + ".records.tmp");
+        try (CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8), FORMAT)) {
+            for (IssueRecord record : cache.records.values())
+                printRecord(printer, record);
+        }
+        Files.move(tmpFile, directory.resolve(domain + ".records"), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private DomainCache getDomainCache(String domain) throws IOException {
+        DomainCache cache = domainCaches.get(domain);
+        if (cache == null) {
+            cache = new DomainCache(directory.resolve(domain + ".records"));
+            cache.load(directory.resolve(domain + ".sync"));
+            domainCaches.put(domain, cache);
+        }
+        return cache;
+    }
+
+    /**
+     * Records whose comments were retrieved have a ninth column holding a line of the form count:author for each
+     * commenter, which is empty if the issue has no comments, whilst the comment counts of records without the
+     * column are unknown.
+     */
+    private static void printRecord(CSVPrinter printer, IssueRecord record) throws IOException {
+        printer.print(record.getKey());
+        printer.print(record.getProject());
+        printer.print(record.getSummary());
+        printer.print(record.getStatus());
+        printer.print(record.getReporter());
+        printer.print(record.getAssignee());
+        printer.print(record.getCreated());
+        printer.print(record.getUpdated());
+        if (record.hasComments()) {
+            String[] authors = record.getCommentAuthors();
+            int[] counts = record.getCommentCounts();
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < authors.length; i++) {
+                if (i > 0)
+                    sb.append('\n');
+                sb.append(counts[i]).append(':').append(authors[i]);
+            }
+            printer.print(sb);
+        }
+        printer.println();
+    }
+
+    private static IssueRecord parseRecord(CSVRecord r) {
+        String[] authors = null;
+        int[] counts = null;
+        if (r.size() > 8) {
+            String[] lines = r.get(8).isEmpty() ? new String[0] : r.get(8).split("\n");
+            authors = new String[lines.length];
+            counts = new int[lines.length];
+            for (int i = 0; i < lines.length; i++) {
+                int idx = lines[i].indexOf(':');
+                counts[i] = Integer.parseInt(lines[i].substring(0, idx));
+                authors[i] = lines[i].substring(idx + 1);
+            }
+        }
+        return new IssueRecord(r.get(0), emptyToNull(r.get(1)), emptyToNull(r.get(2)), emptyToNull(r.get(3)),
+                emptyToNull(r.get(4)), emptyToNull(r.get(5)), Long.parseLong(r.get(6)), Long.parseLong(r.get(7)),
+                authors, counts);
+    }
+
+    private static long toEpochMilli(LocalDate date) {
+        return date.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+
+    private static LocalDate min(LocalDate d1, LocalDate d2) {
+        return d1.isBefore(d2) ? d1 : d2;
+    }
+
+    private static LocalDate max(LocalDate d1, LocalDate d2) {
+        return d1.isAfter(d2) ? d1 : d2;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * The range of issue dates for which every issue of a user has been retrieved, as of the end of the range or later.
+     */
+    private static class SyncState {
+        final LocalDate from;
+        final LocalDate to;
+
+        SyncState(LocalDate from, LocalDate to) {
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    private static class DomainCache {
+        final Path recordsFile;
+        final Map<String, IssueRecord> records = new HashMap<>();
+        final Map<String, SyncState> syncStates = new HashMap<>();
+        CSVPrinter printer;
+        int recordsInLog;
+
+        DomainCache(Path recordsFile) {
+            this.recordsFile = recordsFile;
+        }
+
+        void load(Path syncFile) throws IOException {
+            if (Files.exists(syncFile)) {
+                Properties properties = new Properties();
+                try (Reader reader = Files.newBufferedReader(syncFile, StandardCharsets.UTF_8)) {
+                    properties.load(reader);
+                }
+                for (String user : properties.stringPropertyNames()) {
+                    String[] dates = properties.getProperty(user).split(",");
+                    syncStates.put(user, new SyncState(LocalDate.parse(dates[0]), LocalDate.parse(dates[1])));
+                }
+            }
+
+            if (Files.exists(recordsFile)) {
+                try (CSVParser parser = new CSVParser(Files.newBufferedReader(recordsFile, StandardCharsets.UTF_8),
+                        FORMAT)) {
+                    for (CSVRecord r : parser) {
+                        try {
+                            records.put(r.get(0), parseRecord(r));
+                            recordsInLog++;
+                        } catch (RuntimeException e) {
+                            // A truncated record from an interrupted run is ignored
+                        }
+                    }
+                }
+            }
+        }
+
+        CSVPrinter printer() throws IOException {
+            if (printer == null) {
+                boolean terminated = endsWithNewLine(recordsFile);
+                BufferedWriter writer = Files.newBufferedWriter(recordsFile, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                printer = new CSVPrinter(writer, FORMAT);
+                // Never append to a record that was only partially written by an interrupted run
+                if (!terminated)
+                    printer.println();
+            }
+            return printer;
+        }
+
+        private static boolean endsWithNewLine(Path file) throws IOException {
+            if (!Files.exists(file) || Files.size(file) == 0)
+                return true;
+            try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+                ByteBuffer last = ByteBuffer.allocate(1);
+                channel.position(channel.size() - 1).read(last);
+                return last.get(0) == '\n';
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import net.rcarz.jiraclient.JiraException;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Walks the pages of a JIRA search using startAt/maxResults, so that arbitrarily large result sets can be streamed
+ * without ever being held in memory in their entirety. Whilst the current page is being consumed, the following page
+ * is prefetched on the provided executor, therefore at most two pages of a search are held in memory at any time.
+ * <p>
+ * When an {@link IssueStore} is set, each page is first searched for only the issue keys and updated times. Issues
+ * which are already stored are taken from the store and only the remaining issues are fetched in full, with a single
+ * search by key.
+ *
+ * @author Ryan Emerson
+ */
+public class IssuePager {
+
+    private static final String UPDATED_FIELD = "updated";
+
+    private final ExecutorService executor;
+    private final DomainClient client;
+    private final String jql;
+    private final String fields;
+    // Stored issues which were retrieved without their comments cannot satisfy a search for the comments
+    private final boolean comments;
+    private final int pageSize;
+    private final int maxIssues;
+    private IssueStore issueStore;
+    private String domain;
+    private UserIssueLimit userLimit;
+    private Future<SearchPage> nextPage;
+    private int issuesFetched;
+    private boolean truncated;
+
+    /**
+     * @param fields    a comma separated list of the issue fields to be returned by the search.
+     * @param maxIssues the maximum number of issues that will be returned across all pages.
+     */
+    public IssuePager(ExecutorService executor, DomainClient client, String jql, String fields, int pageSize,
+                      int maxIssues) {
+        this.executor = executor;
+        this.client = client;
+        this.jql = jql;
+        this.fields = fields;
+        this.comments = Arrays.asList(fields.split(",")).contains("comment");
+        this.pageSize = pageSize;
+        this.maxIssues = maxIssues;
+    }
+
+    /**
+     * @param domain the name of the searched domain, which issues are stored under.
+     */
+    public IssuePager setIssueStore(IssueStore issueStore, String domain) {
+        this.issueStore = issueStore;
+        this.domain = domain;
+        return this;
+    }
+
+    /**
+     * @param userLimit the issue limit of each user of a batched search, which stops the search once every user has
+     *                  reached it.
+     */
+    public IssuePager setUserLimit(UserIssueLimit userLimit) {
+        this.userLimit = userLimit;
+        return this;
+    }
+
+    /**
+     * Submit the request for the first page, so that it is fetched before it is required.
+     */
+    public IssuePager start() {
+        nextPage = fetch(0);
+        return this;
+    }
+
+    public boolean hasNextPage() {
+        return nextPage != null;
+    }
+
+    public List<IssueRecord> nextPage() throws JiraException, InterruptedException {
+        SearchPage sr;
+        try {
+            sr = nextPage.get();
+        } catch (ExecutionException e) {
+            nextPage = null;
+            if (e.getCause() instanceof JiraException)
+                throw (JiraException) e.getCause();
+            throw new JiraException("Failed to retrieve page of issues", e.getCause());
+        }
+
+        List<IssueRecord> issues = sr.issues;
+        if (issuesFetched + issues.size() > maxIssues)
+            issues = issues.subList(0, maxIssues - issuesFetched);
+        issuesFetched += issues.size();
+        if (userLimit != null)
+            userLimit.count(issues);
+
+        // The server may return fewer issues than requested, so always continue from the last issue received
+        int nextStart = sr.start + sr.issues.size();
+        boolean moreIssues = !sr.issues.isEmpty() && nextStart < sr.total;
+        // The next page is only prefetched if its issues could still be written
+        boolean limitReached = issuesFetched >= maxIssues || (userLimit != null && userLimit.isReached());
+        truncated = issues.size() < sr.issues.size() || (moreIssues && limitReached);
+        boolean morePages = moreIssues && !limitReached;
+        nextPage = morePages ? fetch(nextStart) : null;
+        return issues;
+    }
+
+    /**
+     * @return true if issues matching the search were not returned because the maximum number of issues was reached.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Cancel any outstanding prefetch, for example because the consumer of the pages has failed.
+     */
+    public void cancel() {
+        if (nextPage != null) {
+            nextPage.cancel(true);
+            nextPage = null;
+        }
+    }
+
+    private Future<SearchPage> fetch(final int startAt) {
+        final int maxResults = Math.min(pageSize, maxIssues - issuesFetched);
+        return executor.submit(new Callable<SearchPage>() {
+            @Override
+            public SearchPage call() throws Exception {
+                if (issueStore == null)
+                    return client.search(jql, fields, maxResults, startAt);
+                return fetchUsingStore(maxResults, startAt);
+            }
+        });
+    }
+
+    private SearchPage fetchUsingStore(int maxResults, int startAt) throws JiraException, InterruptedException {
+        SearchPage keys = client.search(jql, UPDATED_FIELD, maxResults, startAt);
+        IssueRecord[] issues = new IssueRecord[keys.issues.size()];
+        StringBuilder missing = new StringBuilder();
+        int numberMissing = 0;
+        for (int i = 0; i < issues.length; i++) {
+            IssueRecord key = keys.issues.get(i);
+            issues[i] = issueStore.get(domain, key.getKey(), key.getUpdated());
+            if (issues[i] != null && comments && !issues[i].hasComments())
+                issues[i] = null;
+            if (issues[i] == null)
+                missing.append(numberMissing++ == 0 ? "" : ",").append(key.getKey());
+        }
+
+        if (numberMissing > 0) {
+            Map<String, IssueRecord> fetched = new HashMap<>();
+            try {
+                for (IssueRecord issue : client.search("key in (" + missing + ")", fields, numberMissing, 0).issues)
+                    fetched.put(issue.getKey(), issue);
+            } catch (JiraException e) {
+                // JIRA rejects the query if one of the issues has been moved or deleted since the keys were retrieved
+                return client.search(jql, fields, maxResults, startAt);
+            }
+            if (fetched.size() < numberMissing)
+                return client.search(jql, fields, maxResults, startAt);
+
+            for (int i = 0; i < issues.length; i++) {
+                if (issues[i] == null) {
+                    issues[i] = fetched.get(keys.issues.get(i).getKey());
+                    issueStore.put(domain, issues[i]);
+                }
+            }
+        }
+        return new SearchPage(keys.start, keys.total, Arrays.asList(issues));
+    }
+}
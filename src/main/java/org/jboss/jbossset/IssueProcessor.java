@@ -21,9 +21,7 @@
  */
 package org.jboss.jbossset;
 
-import net.rcarz.jiraclient.Comment;
-import net.rcarz.jiraclient.Issue;
-
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -33,33 +31,94 @@ import java.util.List;
 public class IssueProcessor {
 
     public static final Object[] CSV_HEADERS = {"key", "project", "summary", "status", "reporter", "assignee"};
+    public static final Object[] CSV_HEADERS_WITH_COMMENTS = {"key", "project", "summary", "status", "reporter",
+            "assignee", "comments"};
+
+    // The issue key is always returned, whilst created and updated are required for caching and ordering
+    private static final String[] ADDITIONAL_FIELDS = {"created", "updated"};
 
     private final String user;
-    private final Issue issue;
+    private final IssueRecord issue;
 
-    public IssueProcessor(String user, Issue issue) {
+    public IssueProcessor(String user, IssueRecord issue) {
         this.user = user;
         this.issue = issue;
     }
 
+    /**
+     * @return the comma separated list of the JIRA fields that a search must return to produce the CSV columns.
+     */
+    public static String getSearchFields() {
+        return getSearchFields(false);
+    }
+
+    /**
+     * @param comments true if the issues' comments should be returned by the search, so that the number of comments
+     *                 written by each user can be counted from the same page of results.
+     */
+    public static String getSearchFields(boolean comments) {
+        StringBuilder sb = new StringBuilder();
+        for (Object header : CSV_HEADERS) {
+            if (!header.equals("key"))
+                sb.append(header).append(',');
+        }
+        for (String field : ADDITIONAL_FIELDS)
+            sb.append(field).append(',');
+        if (comments)
+            sb.append("comment,");
+        return sb.substring(0, sb.length() - 1);
+    }
+
+    /**
+     * Write the CSV columns of an issue as a single record, without allocating an intermediate list.
+     */
+    public static void printRecord(IssueRecord issue, CsvRecordWriter writer) throws IOException {
+        printColumns(issue, writer);
+        writer.println();
+    }
+
+    /**
+     * Write the CSV columns of an issue followed by the number of comments written by the user, which is left empty
+     * if the issue's comments were not retrieved.
+     */
+    public static void printRecord(IssueRecord issue, String user, CsvRecordWriter writer) throws IOException {
+        printColumns(issue, writer);
+        int comments = issue.getCommentCount(user);
+        writer.print(comments < 0 ? null : comments);
+        writer.println();
+    }
+
+    private static void printColumns(IssueRecord issue, CsvRecordWriter writer) throws IOException {
+        writer.print(issue.getKey());
+        writer.print(issue.getProject());
+        writer.print(issue.getSummary());
+        writer.print(issue.getStatus());
+        writer.print(issue.getReporter());
+        writer.print(issue.getAssignee());
+    }
+
     public List getPrintableRecord() {
+        return getPrintableRecord(false);
+    }
+
+    public List getPrintableRecord(boolean comments) {
         List<Object> record = new ArrayList<>();
         record.add(issue.getKey());
-        record.add(issue.getProject().getName());
+        record.add(issue.getProject());
         record.add(issue.getSummary());
         record.add(issue.getStatus());
         record.add(issue.getReporter());
         record.add(issue.getAssignee());
-//        record.add(getNumberOfUserComments(user, issue));
+        if (comments)
+            record.add(getNumberOfUserComments());
         return record;
     }
 
-    // Jira client does not return any comments at the moment
-    private int getNumberOfUserComments(Issue issue) {
-        int numberOfComments = 0;
-        for (Comment c : issue.getComments())
-            if (c.getAuthor().getDisplayName().equals(user))
-                numberOfComments++;
-        return numberOfComments;
+    /**
+     * @return the number of comments on the issue written by the user, or null if the comments were not retrieved.
+     */
+    private Integer getNumberOfUserComments() {
+        int comments = issue.getCommentCount(user);
+        return comments < 0 ? null : comments;
     }
 }
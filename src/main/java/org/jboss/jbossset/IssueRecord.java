@@ -0,0 +1,220 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+/**
+ * The subset of a JIRA issue's fields which are required by the reporter, stored as plain values so that they can be
+ * cached without retaining the client's object graph.
+ *
+ * @author Ryan Emerson
+ */
+public class IssueRecord {
+
+    private static final DateTimeFormatter JIRA_DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+
+    private final String key;
+    private final String project;
+    private final String summary;
+    private final String status;
+    private final String reporter;
+    private final String assignee;
+    private final long created;
+    private final long updated;
+    // The authors of the issue's comments and the number of comments written by each, or null if the comments were
+    // not retrieved
+    private final String[] commentAuthors;
+    private final int[] commentCounts;
+
+    public IssueRecord(String key, String project, String summary, String status, String reporter, String assignee,
+                       long created, long updated) {
+        this(key, project, summary, status, reporter, assignee, created, updated, null, null);
+    }
+
+    public IssueRecord(String key, String project, String summary, String status, String reporter, String assignee,
+                       long created, long updated, String[] commentAuthors, int[] commentCounts) {
+        this.key = key;
+        this.project = project;
+        this.summary = summary;
+        this.status = status;
+        this.reporter = reporter;
+        this.assignee = assignee;
+        this.created = created;
+        this.updated = updated;
+        this.commentAuthors = commentAuthors;
+        this.commentCounts = commentCounts;
+    }
+
+    /**
+     * Create a record directly from an issue in a search response. Project and status are represented by their name
+     * and users by their username, which is what the CSV output has always contained. If the response includes the
+     * issue's comments, they are reduced to the number of comments written by each author in a single pass.
+     */
+    public static IssueRecord from(JSONObject issue) {
+        JSONObject fields = issue.optJSONObject("fields");
+        if (fields == null)
+            fields = new JSONObject();
+
+        String[] authors = null;
+        int[] counts = null;
+        JSONObject comment = fields.optJSONObject("comment");
+        if (comment != null && !comment.isNullObject()) {
+            JSONArray comments = comment.optJSONArray("comments");
+            int size = comments == null ? 0 : comments.size();
+            authors = new String[size];
+            counts = new int[size];
+            int distinct = 0;
+            for (int i = 0; i < size; i++) {
+                Object value = comments.get(i);
+                String author = value instanceof JSONObject ? getName((JSONObject) value, "author") : null;
+                if (author != null)
+                    distinct = count(authors, counts, distinct, author);
+            }
+            if (distinct < size) {
+                authors = Arrays.copyOf(authors, distinct);
+                counts = Arrays.copyOf(counts, distinct);
+            }
+        }
+        return new IssueRecord(getString(issue, "key"), getName(fields, "project"), getString(fields, "summary"),
+                getName(fields, "status"), getName(fields, "reporter"), getName(fields, "assignee"),
+                parseDateTime(fields.get("created")), parseDateTime(fields.get("updated")), authors, counts);
+    }
+
+    /**
+     * Issues rarely have more than a handful of commenters, so a linear scan is cheaper than hashing.
+     *
+     * @return the number of distinct authors after counting the comment.
+     */
+    private static int count(String[] authors, int[] counts, int distinct, String author) {
+        for (int i = 0; i < distinct; i++) {
+            if (authors[i].equalsIgnoreCase(author)) {
+                counts[i]++;
+                return distinct;
+            }
+        }
+        authors[distinct] = author;
+        counts[distinct] = 1;
+        return distinct + 1;
+    }
+
+    /**
+     * @return the epoch milliseconds of a JIRA date time field, or zero if the field is absent or malformed.
+     */
+    public static long parseDateTime(Object field) {
+        if (!(field instanceof String))
+            return 0;
+        try {
+            return OffsetDateTime.parse((String) field, JIRA_DATE_TIME).toInstant().toEpochMilli();
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    private static String getName(JSONObject fields, String field) {
+        Object value = fields.get(field);
+        if (!(value instanceof JSONObject) || ((JSONObject) value).isNullObject())
+            return null;
+        return getString((JSONObject) value, "name");
+    }
+
+    private static String getString(JSONObject json, String field) {
+        Object value = json.get(field);
+        return value instanceof String ? (String) value : null;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getProject() {
+        return project;
+    }
+
+    public String getSummary() {
+        return summary;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getReporter() {
+        return reporter;
+    }
+
+    public String getAssignee() {
+        return assignee;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getUpdated() {
+        return updated;
+    }
+
+    /**
+     * @return true if the issue's comments were retrieved, otherwise the comment counts are unknown.
+     */
+    public boolean hasComments() {
+        return commentAuthors != null;
+    }
+
+    /**
+     * @return the number of comments on the issue written by the user, or -1 if the comments were not retrieved.
+     */
+    public int getCommentCount(String user) {
+        if (commentAuthors == null)
+            return -1;
+        for (int i = 0; i < commentAuthors.length; i++) {
+            if (commentAuthors[i].equalsIgnoreCase(user))
+                return commentCounts[i];
+        }
+        return 0;
+    }
+
+    /**
+     * @return the authors of the issue's comments, in the same order as {@link #getCommentCounts()}, or null if the
+     * comments were not retrieved.
+     */
+    String[] getCommentAuthors() {
+        return commentAuthors;
+    }
+
+    int[] getCommentCounts() {
+        return commentCounts;
+    }
+
+    /**
+     * JIRA usernames are case insensitive.
+     */
+    public boolean isAssociatedWith(String user) {
+        return user.equalsIgnoreCase(assignee) || user.equalsIgnoreCase(reporter);
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import org.apache.commons.csv.CSVFormat;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts the issues written for each user by domain, project, status and role as they are written, so that a summary
+ * of a run does not require every user's CSV to be read again. No issues are retained, each distinct combination is
+ * a single counter.
+ * <p>
+ * Users, domains, projects and statuses are interned as small ids, with zero representing null, and the ids of a
+ * combination are packed into a single long key of a primitive open addressing map:
+ * <pre>
+ * user 24 bits | domain 8 bits | project 16 bits | status 12 bits | role 2 bits
+ * </pre>
+ * As users are interned in the order they are first counted, sorting the keys orders the summary by user, in the
+ * order of the user list, and then by domain, project, status and role.
+ *
+ * @author Ryan Emerson
+ */
+public class IssueRollup {
+
+    static final Object[] CSV_HEADERS = {"user", "domain", "project", "status", "role", "issues"};
+    private static final String[] ROLES = {null, "assignee", "reporter", "both"};
+
+    private static final int ROLE_BITS = 2;
+    private static final int STATUS_BITS = 12;
+    private static final int PROJECT_BITS = 16;
+    private static final int DOMAIN_BITS = 8;
+    private static final int USER_BITS = 24;
+    private static final int STATUS_SHIFT = ROLE_BITS;
+    private static final int PROJECT_SHIFT = STATUS_SHIFT + STATUS_BITS;
+    private static final int DOMAIN_SHIFT = PROJECT_SHIFT + PROJECT_BITS;
+    private static final int USER_SHIFT = DOMAIN_SHIFT + DOMAIN_BITS;
+
+    private final Dictionary users = new Dictionary("users", USER_BITS);
+    private final Dictionary domains = new Dictionary("domains", DOMAIN_BITS);
+    private final Dictionary projects = new Dictionary("projects", PROJECT_BITS);
+    private final Dictionary statuses = new Dictionary("statuses", STATUS_BITS);
+    // As every key has a non zero user id, a zero key marks an empty slot
+    private long[] keys = new long[64];
+    private long[] counts = new long[64];
+    private int size;
+    private long issues;
+
+    /**
+     * Count an issue written for the specified user, whose role is derived from the issue's assignee and reporter.
+     *
+     * @throws IllegalStateException if there are more distinct values of a column than its id can represent.
+     */
+    public void add(String user, String domain, IssueRecord issue) {
+        long key = (long) users.getId(user) << USER_SHIFT | (long) domains.getId(domain) << DOMAIN_SHIFT |
+                (long) projects.getId(issue.getProject()) << PROJECT_SHIFT |
+                (long) statuses.getId(issue.getStatus()) << STATUS_SHIFT | getRoleId(user, issue);
+        increment(key, 1);
+        issues++;
+    }
+
+    /**
+     * Add the counts of another rollup, such as that of a concurrent run, to this rollup.
+     */
+    public void merge(IssueRollup other) {
+        for (int slot = 0; slot < other.keys.length; slot++) {
+            long key = other.keys[slot];
+            if (key == 0)
+                continue;
+            long merged = (long) users.getId(other.users.getValue(key, USER_SHIFT)) << USER_SHIFT |
+                    (long) domains.getId(other.domains.getValue(key, DOMAIN_SHIFT)) << DOMAIN_SHIFT |
+                    (long) projects.getId(other.projects.getValue(key, PROJECT_SHIFT)) << PROJECT_SHIFT |
+                    (long) statuses.getId(other.statuses.getValue(key, STATUS_SHIFT)) << STATUS_SHIFT |
+                    (key & ((1 << ROLE_BITS) - 1));
+            increment(merged, other.counts[slot]);
+        }
+        issues += other.issues;
+    }
+
+    /**
+     * @return the number of issues counted for the combination, or zero if none were counted.
+     */
+    public long getCount(String user, String domain, String project, String status, String role) {
+        int userId = users.findId(user);
+        int domainId = domains.findId(domain);
+        int projectId = projects.findId(project);
+        int statusId = statuses.findId(status);
+        int roleId = Arrays.asList(ROLES).indexOf(role);
+        if (userId < 0 || domainId < 0 || projectId < 0 || statusId < 0 || roleId < 0)
+            return 0;
+        long key = (long) userId << USER_SHIFT | (long) domainId << DOMAIN_SHIFT |
+                (long) projectId << PROJECT_SHIFT | (long) statusId << STATUS_SHIFT | roleId;
+        int slot = findSlot(key);
+        return keys[slot] == 0 ? 0 : counts[slot];
+    }
+
+    /**
+     * @return the total number of issues counted.
+     */
+    public long getIssues() {
+        return issues;
+    }
+
+    /**
+     * @return the number of distinct user, domain, project, status and role combinations.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Write a CSV record with the number of issues of each combination, ordered by user and then by domain, project,
+     * status and role.
+     */
+    public void write(Path file, CSVFormat format) throws IOException {
+        long[] sorted = new long[size];
+        int n = 0;
+        for (long key : keys)
+            if (key != 0)
+                sorted[n++] = key;
+        Arrays.sort(sorted);
+
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+             CsvRecordWriter writer = new CsvRecordWriter(out, format)) {
+            writer.printRecord(CSV_HEADERS);
+            for (long key : sorted) {
+                writer.print(users.getValue(key, USER_SHIFT));
+                writer.print(domains.getValue(key, DOMAIN_SHIFT));
+                writer.print(projects.getValue(key, PROJECT_SHIFT));
+                writer.print(statuses.getValue(key, STATUS_SHIFT));
+                writer.print(ROLES[(int) (key & ((1 << ROLE_BITS) - 1))]);
+                writer.print(counts[findSlot(key)]);
+                writer.println();
+            }
+        }
+    }
+
+    private static int getRoleId(String user, IssueRecord issue) {
+        boolean assignee = user.equalsIgnoreCase(issue.getAssignee());
+        boolean reporter = user.equalsIgnoreCase(issue.getReporter());
+        return (assignee ? 1 : 0) | (reporter ? 2 : 0);
+    }
+
+    private void increment(long key, long count) {
+        int slot = findSlot(key);
+        if (keys[slot] == 0) {
+            keys[slot] = key;
+            if (++size > keys.length / 2) {
+                resize();
+                slot = findSlot(key);
+            }
+        }
+        counts[slot] += count;
+    }
+
+    /**
+     * @return the slot holding the key, or the empty slot which it would be inserted into.
+     */
+    private int findSlot(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        while (keys[slot] != 0 && keys[slot] != key)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new long[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = findSlot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private static class Dictionary {
+        final String name;
+        final int maxId;
+        final long mask;
+        final Map<String, Integer> ids = new HashMap<>();
+        final List<String> values = new ArrayList<>();
+
+        Dictionary(String name, int bits) {
+            this.name = name;
+            this.maxId = (1 << bits) - 1;
+            this.mask = maxId;
+        }
+
+        int getId(String value) {
+            if (value == null)
+                return 0;
+            Integer id = ids.get(value);
+            if (id == null) {
+                if (values.size() == maxId)
+                    throw new IllegalStateException("The rollup can not count more than " + maxId + " " + name);
+                values.add(value);
+                id = values.size();
+                ids.put(value, id);
+            }
+            return id;
+        }
+
+        /**
+         * @return the id of the value, or -1 if it has not been counted.
+         */
+        int findId(String value) {
+            if (value == null)
+                return 0;
+            Integer id = ids.get(value);
+            return id == null ? -1 : id;
+        }
+
+        String getValue(long key, int shift) {
+            int id = (int) ((key >>> shift) & mask);
+            return id == 0 ? null : values.get(id - 1);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A run scoped store of the issues retrieved from every domain, keyed by domain and issue key, so that an issue which
+ * is associated with several users only has to be fetched in full once. A stored issue is only returned whilst its
+ * updated time matches that of the search result, so an issue modified during the run is always fetched again.
+ * <p>
+ * The store is bounded, once it holds the maximum number of issues the least recently used issue is evicted.
+ *
+ * @author Ryan Emerson
+ */
+public class IssueStore {
+
+    private final Map<String, IssueRecord> issues;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public IssueStore(final int maxIssues) {
+        this.issues = new LinkedHashMap<String, IssueRecord>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, IssueRecord> eldest) {
+                if (size() <= maxIssues)
+                    return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @param updated the updated time of the issue returned by the search.
+     * @return the stored issue, or null if the issue is not stored or has since been updated.
+     */
+    public synchronized IssueRecord get(String domain, String key, long updated) {
+        IssueRecord issue = issues.get(getStoreKey(domain, key));
+        if (issue == null || updated == 0 || issue.getUpdated() != updated) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return issue;
+    }
+
+    public synchronized void put(String domain, IssueRecord issue) {
+        issues.put(getStoreKey(domain, issue.getKey()), issue);
+    }
+
+    public synchronized int size() {
+        return issues.size();
+    }
+
+    /**
+     * @return the number of issues which did not have to be fetched in full, as they were already stored.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return hits + " hits, " + misses + " misses, " + evictions + " evictions, " + issues.size() + " issues stored";
+    }
+
+    private static String getStoreKey(String domain, String key) {
+        return domain + ' ' + key;
+    }
+}
@@ -21,30 +21,16 @@
  */
 package org.jboss.jbossset;
 
-import net.rcarz.jiraclient.Issue;
-import net.rcarz.jiraclient.JiraClient;
-import net.rcarz.jiraclient.JiraException;
-
 import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.ParseException;
-import org.apache.commons.csv.CSVPrinter;
 
-import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.Paths;
-import java.util.Map;
 
 /**
  * A program which retrieves a summary of JIRA issues associated with specified usernames.
  */
 public class JiraReporter {
 
-    private static final String QUERY_TEMPLATE = "AND (updated >= '%1$s' OR created >= '%1$s') " +
-            "AND (updated < '%2$s' OR created < '%2$s') " +
-            "ORDER BY updated %3$s";
-
-    private static final String USER_QUERY_TEMPLATE = "(assignee = %1$s OR reporter = %1$s) ";
-
     public static void main(String[] args) {
         CommandLineParser parser = new CommandLineParser(args);
         try {
@@ -56,44 +42,53 @@ public class JiraReporter {
             return;
         }
 
-        Map<String, String> domains = parser.getDomains();
-        String queryBody = String.format(QUERY_TEMPLATE, parser.getStartDate(), parser.getEndDate(), parser.getIssueOrder());
-        String lineBreak = "---------------------------------------------------------------------";
-        System.out.println("JiraReporter");
-        System.out.println(lineBreak);
-        for (String user : parser.getUsernames()) {
-            System.out.println("Starting to search for JIRA issues associated with user " + user);
-            try (FileWriter fileWriter = new FileWriter(Paths.get("", user + ".csv").toFile());
-                 CSVPrinter printer = new CSVPrinter(fileWriter, parser.getCSVFormat())) {
-                for (Map.Entry<String, String> domain : domains.entrySet()) {
-                    System.out.println("Searching domain " + domain.getKey() + " at url " + domain.getValue());
-
-                    String jqlQuery = String.format(USER_QUERY_TEMPLATE, user) + queryBody;
-                    JiraClient jira = new JiraClient(domain.getValue());
-                    Issue.SearchResult sr;
-                    try {
-                        sr = jira.searchIssues(jqlQuery, parser.getIssueLimit());
-                    } catch (JiraException e) {
-                        System.err.println("Exception while searching domain " + domain.getKey() +
-                                           ": " + e + ": " + e.getCause());
-                        continue;
-                    }
+        if (parser.isCoordinator()) {
+            coordinate(parser);
+            return;
+        }
 
-                    printer.printRecord(domain.getKey() + " Issues");
-                    printer.printRecord(IssueProcessor.CSV_HEADERS);
-                    for (Issue i : sr.issues) {
-                        IssueProcessor processor = new IssueProcessor(user, i);
-                        printer.printRecord(processor.getPrintableRecord());
-                    }
-                    printer.println();
-                }
-            } catch (IOException e) {
-                System.err.println("Error writing to " + user + ".csv: " + e);
-                continue;
+        try (ReportRunner runner = new ReportRunner(parser)) {
+            if (parser.getWorkerId() >= 0) {
+                new ShardWorker(runner, parser).run();
+                runner.printStats(System.out);
+                return;
+            }
+            if (parser.getServerPort() >= 0) {
+                serve(runner, parser);
+                return;
             }
-            System.out.println("All domains searched and results have been output to " + user + ".csv");
-            System.out.println(lineBreak);
+            runner.run(parser);
+            runner.printStats(System.out);
+        } catch (IOException e) {
+            System.err.println("Error accessing the issue cache or columnar file: " + e);
+            System.exit(-1);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
         }
         System.out.println("Searching Complete");
     }
+
+    private static void coordinate(CommandLineParser parser) {
+        try {
+            new ShardCoordinator(parser).run();
+        } catch (IOException e) {
+            System.err.println("Error accessing the work directory: " + e);
+            System.exit(-1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void serve(ReportRunner runner, CommandLineParser parser) throws IOException {
+        try (ReportServer server = new ReportServer(runner, parser)) {
+            System.out.println("JiraReporter server listening on http://localhost:" + server.getPort() + "/report");
+            System.out.println("Requests must carry the token written to " + server.getTokenFile());
+            server.awaitShutdown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("JiraReporter server stopped");
+    }
 }
@@ -0,0 +1,236 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Composes the JQL queries of a run. The date range and ordering of the run's query body are formatted once, user
+ * names are quoted and escaped whenever they are not plain words, and completed queries are cached by their users
+ * and additional clauses, so that the searches of each domain, window and run of a batch share a single query.
+ * <p>
+ * Every query has the form <code>&lt;user clause&gt; &lt;clauses&gt; &lt;body&gt;</code>, where the clauses are
+ * restrictions such as {@link #updatedSince(LocalDate)} which each start with "AND" and end with a space.
+ *
+ * @author Ryan Emerson
+ */
+public class JqlQueryBuilder {
+
+    private static final String DATE_RANGE_TEMPLATE = "AND (updated >= '%1$s' OR created >= '%1$s') " +
+            "AND (updated < '%2$s' OR created < '%2$s') " +
+            "ORDER BY updated %3$s";
+    private static final String BATCH_CLAUSE_START = "(assignee in (";
+    private static final String BATCH_CLAUSE_MIDDLE = ") OR reporter in (";
+    private static final String BATCH_CLAUSE_END = ")) ";
+    private static final int BATCH_CLAUSE_LENGTH = BATCH_CLAUSE_START.length() + BATCH_CLAUSE_MIDDLE.length() +
+            BATCH_CLAUSE_END.length();
+    // The words which JIRA reserves in JQL, which must be quoted when used as values
+    private static final Set<String> RESERVED_WORDS = new HashSet<>(Arrays.asList(
+            "a", "an", "abort", "access", "add", "after", "alias", "all", "alter", "and", "any", "as", "asc", "audit",
+            "avg", "before", "begin", "between", "boolean", "break", "by", "byte", "catch", "cf", "char", "character",
+            "check", "checkpoint", "collate", "collation", "column", "commit", "connect", "continue", "count",
+            "create", "current", "date", "decimal", "declare", "decrement", "default", "defaults", "define",
+            "delete", "delimiter", "desc", "difference", "distinct", "divide", "do", "double", "drop", "else",
+            "empty", "encoding", "end", "equals", "escape", "exclusive", "exec", "execute", "exists", "explain",
+            "false", "fetch", "file", "field", "first", "float", "for", "from", "function", "go", "goto", "grant",
+            "greater", "group", "having", "identified", "if", "immediate", "in", "increment", "index", "initial",
+            "inner", "inout", "input", "insert", "int", "integer", "intersect", "intersection", "into", "is",
+            "isempty", "isnull", "join", "last", "left", "less", "like", "limit", "lock", "long", "max", "min",
+            "minus", "mode", "modify", "modulo", "more", "multiply", "next", "noaudit", "not", "notin", "nowait",
+            "null", "number", "object", "of", "on", "option", "or", "order", "outer", "output", "power", "previous",
+            "prior", "privileges", "public", "raise", "raw", "remainder", "rename", "resource", "return", "returns",
+            "revoke", "right", "row", "rowid", "rownum", "rows", "select", "session", "set", "share", "size", "sqrt",
+            "start", "strict", "string", "subtract", "sum", "synonym", "table", "then", "to", "trans", "transaction",
+            "trigger", "true", "uid", "union", "unique", "update", "user", "validate", "values", "view", "when",
+            "whenever", "where", "while", "with"));
+
+    private final String body;
+    private final Map<QueryKey, String> cache;
+
+    /**
+     * @param body      the remainder of every query, which starts with "AND" or "ORDER BY".
+     * @param cacheSize the maximum number of queries which are cached.
+     */
+    public JqlQueryBuilder(String body, final int cacheSize) {
+        this.body = body;
+        this.cache = new LinkedHashMap<QueryKey, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<QueryKey, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * @return the body of a query restricted to the issues created or updated in the date range.
+     */
+    public static String getDateRangeBody(LocalDate startDate, LocalDate endDate, String issueOrder) {
+        return String.format(DATE_RANGE_TEMPLATE, startDate, endDate, issueOrder);
+    }
+
+    /**
+     * @return a clause which restricts a query to the issues updated on or after the date.
+     */
+    public static String updatedSince(LocalDate date) {
+        return "AND updated >= '" + date + "' ";
+    }
+
+    /**
+     * @param from  the first update time of the window, formatted as "yyyy-MM-dd HH:mm", or null if unbounded.
+     * @param until the update time which ends the window, formatted as "yyyy-MM-dd HH:mm", or null if unbounded.
+     * @return a clause which restricts a query to the issues updated within the window.
+     */
+    public static String updatedWithin(String from, String until) {
+        return (from == null ? "" : "AND updated >= '" + from + "' ") +
+                (until == null ? "" : "AND updated < '" + until + "' ");
+    }
+
+    /**
+     * @return the value as a JQL token, which is quoted and escaped unless it is a plain word that JIRA does not
+     * reserve.
+     */
+    public static String quote(String value) {
+        if (isPlainWord(value) && !RESERVED_WORDS.contains(value.toLowerCase()))
+            return value;
+
+        StringBuilder sb = new StringBuilder(value.length() + 8).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\'':
+                case '\\':
+                    sb.append('\\').append(c);
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < ' ')
+                        sb.append(String.format("\\u%04x", (int) c));
+                    else
+                        sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static boolean isPlainWord(String value) {
+        if (value.isEmpty())
+            return false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_'))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the length of the clause which selects the users of a batch, given the length of the comma separated
+     * list of their quoted names.
+     */
+    public static int getBatchClauseLength(int userListLength) {
+        return BATCH_CLAUSE_LENGTH + 2 * userListLength;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * @return the query which selects the issues assigned to or reported by the users.
+     */
+    public String build(List<String> users) {
+        return build(users, "");
+    }
+
+    /**
+     * @param clauses further restrictions of the query, each starting with "AND" and ending with a space.
+     * @return the query which selects the issues of the users which also satisfy the clauses.
+     */
+    public String build(List<String> users, String clauses) {
+        QueryKey key = new QueryKey(users, clauses);
+        synchronized (cache) {
+            String query = cache.get(key);
+            if (query != null)
+                return query;
+        }
+
+        String query = getUserClause(users) + clauses + body;
+        synchronized (cache) {
+            cache.put(key, query);
+        }
+        return query;
+    }
+
+    private static String getUserClause(List<String> users) {
+        if (users.size() == 1) {
+            String user = quote(users.get(0));
+            return "(assignee = " + user + " OR reporter = " + user + ") ";
+        }
+
+        StringBuilder userList = new StringBuilder();
+        for (String user : users)
+            userList.append(userList.length() == 0 ? "" : ",").append(quote(user));
+        return new StringBuilder(getBatchClauseLength(userList.length())).append(BATCH_CLAUSE_START)
+                .append(userList).append(BATCH_CLAUSE_MIDDLE).append(userList).append(BATCH_CLAUSE_END).toString();
+    }
+
+    private static class QueryKey {
+        final List<String> users;
+        final String clauses;
+
+        QueryKey(List<String> users, String clauses) {
+            this.users = Collections.unmodifiableList(users);
+            this.clauses = clauses;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof QueryKey))
+                return false;
+            QueryKey key = (QueryKey) o;
+            return users.equals(key.users) && clauses.equals(key.clauses);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * users.hashCode() + clauses.hashCode();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An append only journal of the progress of a run, which allows a run that was interrupted to be resumed without
+ * searching again for the users and domains it had already completed.
+ * <p>
+ * A record is appended once each user/domain unit has been completely written, containing the offset of the user's
+ * CSV at the end of the unit, and a further record once the user's CSV has been closed. The CSV is forced to disk
+ * before its record is appended, so a recorded offset always refers to durable output, whilst the journal itself is
+ * only forced when it is closed: a record which is lost merely causes its unit to be repeated. Each record is a
+ * single small write, which is performed by the writer threads rather than by the searches.
+ * <p>
+ * The first line of the journal identifies the run's arguments, and a journal written by a run with different
+ * arguments is discarded rather than resumed. A torn record at the end of the journal is ignored and truncated.
+ *
+ * @author Ryan Emerson
+ */
+public class ProgressJournal implements AutoCloseable {
+
+    public static final String FILE_NAME = ".jira-reporter.journal";
+
+    private static final char DOMAIN = 'D';
+    private static final char COMPLETE = 'C';
+    private static final char RESET = 'R';
+
+    private final Path file;
+    private final FileChannel channel;
+    private final Map<String, UserProgress> progress;
+
+    private ProgressJournal(Path file, FileChannel channel, Map<String, UserProgress> progress) {
+        this.file = file;
+        this.channel = channel;
+        this.progress = progress;
+    }
+
+    /**
+     * @param directory the directory containing the users' output files, which the journal is stored in.
+     * @param signature identifies the arguments of the run, so that a journal is only resumed by the same run.
+     * @param resume    true if the progress of an existing journal should be loaded, otherwise it is discarded.
+     */
+    public static ProgressJournal open(Path directory, String signature, boolean resume) throws IOException {
+        Path file = directory.resolve(FILE_NAME);
+        String header = "# " + Integer.toHexString(signature.hashCode()) + "\n";
+        Map<String, UserProgress> progress = new HashMap<>();
+        long validLength = -1;
+        if (resume && Files.exists(file)) {
+            validLength = load(file, header, progress);
+            if (validLength < 0)
+                System.err.println("The progress journal " + file + " was written by a run with different " +
+                                   "arguments, the run will not be resumed");
+        }
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (validLength < 0) {
+            progress.clear();
+            channel.truncate(0);
+            channel.write(ByteBuffer.wrap(header.getBytes(StandardCharsets.UTF_8)));
+        } else {
+            channel.truncate(validLength);
+            channel.position(validLength);
+        }
+        return new ProgressJournal(file, channel, progress);
+    }
+
+    /**
+     * @return the progress recorded for the user, or null if no progress has been recorded.
+     */
+    public synchronized UserProgress getProgress(String user) {
+        return progress.get(user);
+    }
+
+    /**
+     * @return the number of users whose output was completed by a previous run.
+     */
+    public synchronized int getCompletedUsers() {
+        int completed = 0;
+        for (UserProgress user : progress.values()) {
+            if (user.complete)
+                completed++;
+        }
+        return completed;
+    }
+
+    /**
+     * Record that all of a user's issues from a domain have been written and are durable up to the offset.
+     */
+    public synchronized void recordDomain(String user, String domain, long offset) throws IOException {
+        append(DOMAIN + "\t" + user + "\t" + domain + "\t" + offset + "\n");
+    }
+
+    /**
+     * Record that every domain has been written to the user's output, which has been closed.
+     */
+    public synchronized void recordComplete(String user) throws IOException {
+        append(COMPLETE + "\t" + user + "\n");
+    }
+
+    /**
+     * Record that the user's output has been started again, discarding the progress of any previous run.
+     */
+    public synchronized void recordReset(String user) throws IOException {
+        append(RESET + "\t" + user + "\n");
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return file.toString();
+    }
+
+    private void append(String record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    /**
+     * @return the length of the journal's complete records, or -1 if the journal belongs to a different run.
+     */
+    private static long load(Path file, String header, Map<String, UserProgress> progress) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        String content = new String(bytes, StandardCharsets.UTF_8);
+        if (!content.startsWith(header))
+            return -1;
+
+        int start = header.length();
+        int end;
+        while ((end = content.indexOf('\n', start)) >= 0) {
+            String[] fields = content.substring(start, end).split("\t");
+            start = end + 1;
+            UserProgress user = progress.get(fields[1]);
+            if (user == null) {
+                user = new UserProgress();
+                progress.put(fields[1], user);
+            }
+            switch (fields[0].charAt(0)) {
+                case DOMAIN:
+                    user.domains.put(fields[2], Long.parseLong(fields[3]));
+                    user.offset = Long.parseLong(fields[3]);
+                    break;
+                case COMPLETE:
+                    user.complete = true;
+                    break;
+                case RESET:
+                    progress.remove(fields[1]);
+                    break;
+                default:
+                    throw new IOException("Invalid record in progress journal " + file + ": " + fields[0]);
+            }
+        }
+        return content.substring(0, start).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * The progress of a user recorded by a previous run.
+     */
+    public static class UserProgress {
+        private final Map<String, Long> domains = new LinkedHashMap<>();
+        private long offset;
+        private boolean complete;
+
+        /**
+         * @return the domains which have been completely written to the user's output.
+         */
+        public Set<String> getDomains() {
+            return Collections.unmodifiableSet(domains.keySet());
+        }
+
+        /**
+         * @return the offset of the user's output at the end of the last completed domain.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return true if every domain has been written and the user's output has been closed.
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+}
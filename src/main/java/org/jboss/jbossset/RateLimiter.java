@@ -0,0 +1,104 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket rate limiter which adapts its rate to the responses of a domain. The rate is halved whenever the
+ * domain throttles or fails a request, and is increased additively after a run of successful requests, up to the
+ * configured maximum. A Retry-After period received from the domain pauses all requests until it has elapsed.
+ *
+ * @author Ryan Emerson
+ */
+public class RateLimiter {
+
+    private static final int SUCCESSES_BEFORE_INCREASE = 10;
+
+    private final double maxRate;
+    private final double minRate;
+    private final double burst;
+    private double rate;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    private long pausedUntil = lastRefill;
+    private int successes;
+
+    /**
+     * @param maxRate the maximum number of requests per second.
+     */
+    public RateLimiter(double maxRate) {
+        this.maxRate = maxRate;
+        this.minRate = maxRate / 100;
+        this.burst = Math.max(1, maxRate);
+        this.rate = maxRate;
+        this.tokens = burst;
+    }
+
+    /**
+     * Block until a request is permitted.
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (true) {
+            long now = System.nanoTime();
+            if (now - pausedUntil < 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, pausedUntil - now);
+                continue;
+            }
+
+            tokens = Math.min(burst, tokens + (now - lastRefill) * rate / TimeUnit.SECONDS.toNanos(1));
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens--;
+                return;
+            }
+            long waitNanos = (long) ((1 - tokens) * TimeUnit.SECONDS.toNanos(1) / rate);
+            TimeUnit.NANOSECONDS.timedWait(this, Math.max(1, waitNanos));
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (++successes >= SUCCESSES_BEFORE_INCREASE) {
+            successes = 0;
+            rate = Math.min(maxRate, rate + maxRate / SUCCESSES_BEFORE_INCREASE);
+        }
+    }
+
+    /**
+     * @param retryAfterMillis the period requested by the domain before further requests are sent, or zero.
+     */
+    public synchronized void onThrottled(long retryAfterMillis) {
+        successes = 0;
+        rate = Math.max(minRate, rate / 2);
+        tokens = Math.min(tokens, 0);
+        if (retryAfterMillis > 0) {
+            long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis);
+            if (until - pausedUntil > 0)
+                pausedUntil = until;
+        }
+        notifyAll();
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs reports with the clients, issue cache and issue store created from the arguments the process was started
+ * with. A single runner can execute many reports, so that a long running process keeps its pooled connections, cached
+ * issues and warmed up code between reports. Reports must not be run concurrently, as each report writes to the
+ * shared cache and the current directory.
+ *
+ * @author Ryan Emerson
+ */
+public class ReportRunner implements AutoCloseable {
+
+    static final String LINE_BREAK = "---------------------------------------------------------------------";
+
+    private final DomainClientRegistry clients;
+    private final IssueCache cache;
+    private final IssueStore store;
+    private final MetricsExporter metrics;
+    private final FixtureRecorder recorder;
+    // The local stub servers which replace each domain url when replaying or load testing
+    private final Map<String, StubJiraServer> stubs = new LinkedHashMap<>();
+    private final Path replayDir;
+    private final int syntheticIssues;
+    private final int stubLatency;
+    private final int stubJitter;
+    private final int stubErrorRate;
+
+    /**
+     * @param parser the arguments which configure the connections, cache, store and metrics of every report.
+     */
+    public ReportRunner(CommandLineParser parser) throws IOException {
+        clients = new DomainClientRegistry(parser.getPoolSize(), TimeUnit.SECONDS.toMillis(parser.getIdleTimeout()))
+                .setMaxRequestRate(parser.getRateLimit())
+                .setRetryPolicy(new RetryPolicy(parser.getMaxRetries(), 1000, 60000))
+                .setCircuitBreaker(parser.getFailureThreshold(), TimeUnit.SECONDS.toMillis(parser.getBreakerTimeout()));
+        cache = parser.getCacheDir() == null ? null : new IssueCache(parser.getCacheDir(), parser.getStartDate(),
+                parser.getEndDate(), parser.getIssueOrder().equals("DESC"));
+        store = parser.getStoreSize() > 0 ? new IssueStore(parser.getStoreSize()) : null;
+        metrics = parser.getMetricsFile() == null ? null :
+                new MetricsExporter(parser.getMetricsFile(), clients, parser.getMetricsInterval());
+        recorder = parser.getRecordDir() == null ? null : new FixtureRecorder(parser.getRecordDir());
+        clients.setRecorder(recorder);
+        replayDir = parser.getReplayDir();
+        syntheticIssues = parser.getSyntheticIssues();
+        stubLatency = parser.getStubLatency();
+        stubJitter = parser.getStubJitter();
+        stubErrorRate = parser.getStubErrorRate();
+        if (parser.isVirtualThreads() && !VirtualThreadExecutor.isVirtual())
+            System.err.println("Virtual threads are not supported by this JVM, platform threads will be used instead");
+    }
+
+    /**
+     * Run a single report. Options which configure the connections, cache, store and metrics are ignored, as those
+     * are shared by every report of the runner.
+     */
+    public RunReport run(CommandLineParser parser) throws IOException {
+        return run(parser, parser.getUsers(), true);
+    }
+
+    /**
+     * Run a report for a subset of the parser's users, such as a shard of a distributed run.
+     *
+     * @param journalled true if the progress of the run should be recorded in the output directory's journal, which
+     *                   must be false if other processes are writing to the same output directory.
+     */
+    public RunReport run(CommandLineParser parser, Iterable<String> users, boolean journalled) throws IOException {
+        String queryBody = JqlQueryBuilder.getDateRangeBody(parser.getStartDate(), parser.getEndDate(),
+                parser.getIssueOrder());
+        IssueCache runCache = cache == null ? null :
+                cache.forRun(parser.getStartDate(), parser.getEndDate(), parser.getIssueOrder().equals("DESC"));
+        System.out.println("JiraReporter");
+        System.out.println(LINE_BREAK);
+        Map<String, String> domains = getDomains(parser);
+        probe(parser, domains);
+        // Only a run with the same arguments can resume the progress of a previous run
+        String signature = queryBody + parser.getDomains() + parser.getCSVFormat() + parser.getIssueLimit() +
+                parser.isGzip() + parser.isComments();
+        IssueRollup rollup = parser.getSummaryFile() == null ? null : new IssueRollup();
+        try (ProgressJournal journal = !journalled ? null :
+                ProgressJournal.open(parser.getOutputDir(), signature, parser.isResume());
+             ColumnarExporter columnar = parser.getColumnarFile() == null ? null :
+                new ColumnarExporter(parser.getColumnarFile());
+             ReportScheduler scheduler = new ReportScheduler(domains, clients, queryBody,
+                     parser.getCSVFormat(), parser.getIssueLimit(), parser.getThreads(), parser.getOutputDir())) {
+            scheduler.setPageSize(parser.getPageSize())
+                    .setMaxQueryLength(parser.isBatch() ? parser.getMaxQueryLength() : 0)
+                    .setIssueCache(runCache)
+                    .setIssueStore(store)
+                    .setColumnarExporter(columnar)
+                    .setRollup(rollup)
+                    .setWriterThreads(parser.getWriterThreads())
+                    .setGzip(parser.isGzip())
+                    .setVirtualThreads(parser.isVirtualThreads())
+                    .setComments(parser.isComments())
+                    .setJournal(journal)
+                    .setSharding(parser.getStartDate(), parser.getEndDate(), parser.getIssueOrder().equals("DESC"),
+                            parser.getShardSize())
+                    .run(users, LINE_BREAK);
+            if (rollup != null)
+                rollup.write(parser.getSummaryFile(), parser.getCSVFormat());
+            scheduler.getRunReport().print(System.out);
+            return scheduler.getRunReport();
+        } catch (UncheckedIOException e) {
+            // The user file is streamed during the run
+            throw e.getCause();
+        } finally {
+            if (runCache != null)
+                runCache.flush();
+        }
+    }
+
+    /**
+     * @return the domains of the run, with each url replaced by that of its stub server if the domains are replayed
+     * or synthetic.
+     */
+    private synchronized Map<String, String> getDomains(CommandLineParser parser) throws IOException {
+        if (replayDir == null && syntheticIssues == 0)
+            return parser.getDomains();
+
+        Map<String, String> domains = new LinkedHashMap<>();
+        for (Map.Entry<String, String> domain : parser.getDomains().entrySet()) {
+            StubJiraServer stub = stubs.get(domain.getValue());
+            if (stub == null) {
+                stub = replayDir == null ? new StubJiraServer(domain.getKey(), syntheticIssues, stubLatency) :
+                        StubJiraServer.replay(replayDir.resolve(FixtureRecorder.getFileName(domain.getValue())),
+                                stubLatency);
+                stub.setJitter(stubJitter).setErrorRate(stubErrorRate / 100.0, 503, -1);
+                stubs.put(domain.getValue(), stub);
+            }
+            domains.put(domain.getKey(), stub.getUrl());
+        }
+        return domains;
+    }
+
+    /**
+     * Probe the health of each domain which has not been searched by a previous report, with the timeouts set by the
+     * domains file, and print the latency of each.
+     */
+    private void probe(CommandLineParser parser, Map<String, String> domains) {
+        for (Map.Entry<String, String> domain : domains.entrySet()) {
+            Integer connectTimeout = parser.getConnectTimeouts().get(domain.getKey());
+            Integer readTimeout = parser.getReadTimeouts().get(domain.getKey());
+            if (connectTimeout != null || readTimeout != null) {
+                clients.setTimeouts(domain.getValue(),
+                        connectTimeout == null ? DomainClientRegistry.DEFAULT_CONNECT_TIMEOUT : connectTimeout,
+                        readTimeout == null ? DomainClientRegistry.DEFAULT_READ_TIMEOUT : readTimeout);
+            }
+        }
+
+        Map<String, Boolean> health;
+        try {
+            health = clients.probe(domains.values());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (health.isEmpty())
+            return;
+        for (Map.Entry<String, String> domain : domains.entrySet()) {
+            Boolean healthy = health.get(domain.getValue());
+            if (healthy == null)
+                continue;
+            if (healthy) {
+                long latency = Math.round(clients.getClient(domain.getValue()).getLatencyMillis());
+                System.out.println("Domain " + domain.getKey() + " responded in " + latency + "ms");
+            } else {
+                System.err.println("Domain " + domain.getKey() + " at url " + domain.getValue() + " is unhealthy, " +
+                        "its searches will fail until it recovers");
+            }
+        }
+        System.out.println(LINE_BREAK);
+    }
+
+    public DomainClientRegistry getClients() {
+        return clients;
+    }
+
+    public void printStats(PrintStream out) {
+        if (store != null)
+            out.println("Issue store: " + store);
+        for (Map.Entry<String, DomainClientRegistry.ConnectionStats> stats : clients.getStats().entrySet())
+            out.println("Connections to " + stats.getKey() + ": " + stats.getValue());
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (metrics != null)
+                metrics.close();
+            if (cache != null)
+                cache.close();
+        } finally {
+            clients.close();
+            for (StubJiraServer stub : stubs.values())
+                stub.close();
+            if (recorder != null)
+                recorder.close();
+        }
+    }
+}
@@ -0,0 +1,774 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import net.rcarz.jiraclient.JiraException;
+
+import org.apache.commons.csv.CSVFormat;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Executes the JIRA searches for every user/domain pair concurrently. Each domain has its own fixed size pool of
+ * search threads, so a slow domain can only ever occupy its own threads and never starves the other domains.
+ * Results are always written to a user's CSV in the iteration order of the domains map, regardless of the order in
+ * which the searches complete. Each search is streamed page by page via an {@link IssuePager}, so memory usage is
+ * bounded by the page size rather than by the number of issues returned. The searches of each batch are started in
+ * order of the domains' average latency, and a domain whose circuit breaker is open fails its searches immediately,
+ * so an unhealthy domain does not hold up the writing of every user.
+ * <p>
+ * When batching is enabled, many users are packed into a single JQL query per domain, limited by the maximum query
+ * length, and the returned issues are demultiplexed back to each user's CSV by their assignee and reporter.
+ * <p>
+ * When an {@link IssueCache} is provided, every retrieved issue is cached and users who have previously been
+ * synchronised are only searched for issues updated since that synchronisation, with the results being merged with
+ * their cached issues.
+ * <p>
+ * Output files can be written by a {@link WriterStage}, so that disk writes overlap with the searches. Each user's
+ * file is always written by a single writer thread, in the same order as if it were written synchronously.
+ * <p>
+ * When an {@link IssueStore} is provided, issues which have already been retrieved for another user during the run
+ * are taken from the store rather than being fetched in full again.
+ * <p>
+ * In virtual thread mode each search is started on its own virtual thread by a {@link VirtualThreadExecutor}, and the
+ * number of concurrent searches of a domain is bounded by a semaphore rather than by the size of its pool.
+ * <p>
+ * When sharding is enabled, each search which is not restricted to recently updated issues is split by a
+ * {@link ShardedPager} into windows of update times, which are retrieved concurrently on the domain's threads.
+ * <p>
+ * When a {@link ProgressJournal} is provided, the completion of each user/domain unit is recorded, and the progress
+ * loaded from the journal of an interrupted run is resumed: users who were completed are skipped, and the CSV of a
+ * partially written user is truncated to the end of its last completed domain, with only the remaining domains
+ * being searched. Issues of the skipped units are not written to the columnar export.
+ *
+ * @author Ryan Emerson
+ */
+public class ReportScheduler implements AutoCloseable {
+
+    // Enough for the queries of every domain and shard of the batches in flight
+    private static final int QUERY_CACHE_SIZE = 1024;
+    private static final int BUFFER_SIZE = 256 * 1024;
+    // Allows each writer thread to fall a few pages behind the searches before they are throttled
+    private static final int WRITER_QUEUE_CAPACITY = 64;
+
+    private final Map<String, String> domains;
+    private final DomainClientRegistry clients;
+    private final Map<String, ExecutorService> domainExecutors = new LinkedHashMap<>();
+    private final JqlQueryBuilder queryBuilder;
+    private final CSVFormat csvFormat;
+    private final int issueLimit;
+    private final int threadsPerDomain;
+    private final int batchesInFlight;
+    private final Path outputDir;
+    private final RunReport runReport = new RunReport();
+    private int pageSize;
+    private int maxQueryLength;
+    private IssueCache issueCache;
+    private IssueStore issueStore;
+    private ColumnarExporter columnarExporter;
+    private IssueRollup rollup;
+    private int writerThreads;
+    private boolean gzip;
+    private boolean virtualThreads;
+    private boolean comments;
+    private LocalDate shardStart;
+    private LocalDate shardEnd;
+    private boolean descending;
+    private int shardSize;
+    private ProgressJournal journal;
+
+    public ReportScheduler(Map<String, String> domains, DomainClientRegistry clients, String queryBody,
+                           CSVFormat csvFormat, int issueLimit, int threadsPerDomain, Path outputDir) {
+        this.domains = domains;
+        this.clients = clients;
+        this.queryBuilder = new JqlQueryBuilder(queryBody, QUERY_CACHE_SIZE);
+        this.csvFormat = csvFormat;
+        this.issueLimit = issueLimit;
+        this.pageSize = issueLimit;
+        this.threadsPerDomain = threadsPerDomain;
+        // Keep enough batches queued to saturate every domain pool, but no more, so that completed search results
+        // do not accumulate in memory whilst waiting to be written
+        this.batchesInFlight = threadsPerDomain + 1;
+        this.outputDir = outputDir;
+    }
+
+    /**
+     * @param pageSize the maximum number of issues requested by each search request.
+     */
+    public ReportScheduler setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    /**
+     * @param maxQueryLength the maximum length of a batched JQL query, or zero if each user should be searched for
+     *                       with a separate query.
+     */
+    public ReportScheduler setMaxQueryLength(int maxQueryLength) {
+        this.maxQueryLength = maxQueryLength;
+        return this;
+    }
+
+    /**
+     * @param issueCache the cache used to store retrieved issues and to restrict searches to recently updated issues.
+     */
+    public ReportScheduler setIssueCache(IssueCache issueCache) {
+        this.issueCache = issueCache;
+        return this;
+    }
+
+    /**
+     * @param issueStore the store used to share the issues retrieved for one user with the searches of other users.
+     */
+    public ReportScheduler setIssueStore(IssueStore issueStore) {
+        this.issueStore = issueStore;
+        return this;
+    }
+
+    /**
+     * @param columnarExporter the exporter which every issue written to a user's CSV is also written to.
+     */
+    public ReportScheduler setColumnarExporter(ColumnarExporter columnarExporter) {
+        this.columnarExporter = columnarExporter;
+        return this;
+    }
+
+    /**
+     * @param rollup the rollup which every issue written to a user's CSV is counted in.
+     */
+    public ReportScheduler setRollup(IssueRollup rollup) {
+        this.rollup = rollup;
+        return this;
+    }
+
+    /**
+     * @param writerThreads the number of threads which write the output files, or zero if they should be written by
+     *                      the thread calling {@link #run(List, String)}.
+     */
+    public ReportScheduler setWriterThreads(int writerThreads) {
+        this.writerThreads = writerThreads;
+        return this;
+    }
+
+    /**
+     * @param gzip true if each user's CSV should be gzip compressed.
+     */
+    public ReportScheduler setGzip(boolean gzip) {
+        this.gzip = gzip;
+        return this;
+    }
+
+    /**
+     * @param virtualThreads true if each search should be executed on its own virtual thread, with the number of
+     *                       concurrent searches of each domain bounded by the threads per domain.
+     */
+    public ReportScheduler setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    /**
+     * @param comments true if each issue's CSV record should include the number of comments written by the user,
+     *                 which are counted from the comments returned with each page of search results.
+     */
+    public ReportScheduler setComments(boolean comments) {
+        this.comments = comments;
+        return this;
+    }
+
+    /**
+     * @param startDate  the start of the searched date range, which is split into windows.
+     * @param endDate    the end of the searched date range.
+     * @param descending true if the query body orders issues by descending update time.
+     * @param shardSize  the maximum number of issues of a window before it is split, or zero to disable sharding.
+     */
+    public ReportScheduler setSharding(LocalDate startDate, LocalDate endDate, boolean descending, int shardSize) {
+        this.shardStart = startDate;
+        this.shardEnd = endDate;
+        this.descending = descending;
+        this.shardSize = shardSize;
+        return this;
+    }
+
+    /**
+     * @param journal the journal which the progress of the run is recorded in, and any previous progress is resumed
+     *                from.
+     */
+    public ReportScheduler setJournal(ProgressJournal journal) {
+        this.journal = journal;
+        return this;
+    }
+
+    /**
+     * @return the report of the user/domain searches which failed.
+     */
+    public RunReport getRunReport() {
+        return runReport;
+    }
+
+    /**
+     * @param usernames the users to search for, which are only iterated as the users are submitted, so that a user
+     *                  file can be streamed.
+     */
+    public void run(Iterable<String> usernames, String lineBreak) {
+        Iterator<UserBatch> it = new BatchIterator(usernames.iterator());
+        Deque<UserBatch> inFlight = new ArrayDeque<>();
+        while (inFlight.size() < batchesInFlight && it.hasNext())
+            inFlight.add(submit(it.next()));
+
+        try (WriterStage writerStage = new WriterStage(writerThreads, WRITER_QUEUE_CAPACITY)) {
+            while (!inFlight.isEmpty()) {
+                UserBatch batch = inFlight.poll();
+                if (it.hasNext())
+                    inFlight.add(submit(it.next()));
+                write(batch, writerStage);
+                System.out.println(lineBreak);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (UserBatch batch : inFlight) {
+                for (DomainSearch search : batch.results.values())
+                    search.pager.cancel();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (ExecutorService executor : domainExecutors.values())
+            executor.shutdownNow();
+    }
+
+    private UserBatch submit(UserBatch batch) {
+        // A single user may own most of the issues matched by a batch, so a batch is paged until every user has
+        // reached the issue limit rather than being capped at a total number of issues
+        boolean batched = batch.users.size() > 1;
+        int maxIssues = batched ? Integer.MAX_VALUE : issueLimit;
+        for (String user : batch.users)
+            batch.progress.put(user, getResumableProgress(user));
+
+        Map<String, DomainSearch> searches = new HashMap<>();
+        for (Map.Entry<String, String> domain : getDomainsByLatency()) {
+            if (isCompleted(batch, domain.getKey()))
+                continue;
+            String deltaClause = null;
+            if (issueCache != null) {
+                try {
+                    deltaClause = issueCache.getDeltaClause(domain.getKey(), batch.users);
+                } catch (IOException e) {
+                    System.err.println("Unable to read the issue cache of domain " + domain.getKey() + ": " + e);
+                }
+            }
+            ExecutorService executor = getExecutor(domain.getKey());
+            DomainClient client = clients.getClient(domain.getValue());
+            ShardedPager pager = new ShardedPager(executor, client, queryBuilder, batch.users,
+                    deltaClause == null ? "" : deltaClause, IssueProcessor.getSearchFields(comments), pageSize,
+                    maxIssues)
+                    .setIssueStore(issueStore, domain.getKey());
+            // Delta searches are merged with the cached issues before the limit is applied, so must be read in full
+            if (batched && deltaClause == null)
+                pager.setUserLimit(new UserIssueLimit(getSearchedUsers(batch, domain.getKey()), issueLimit));
+            // Delta searches only return recently updated issues, so there is nothing to be gained from splitting them
+            if (shardSize > 0 && deltaClause == null)
+                pager.setSharding(shardStart, shardEnd, descending, shardSize, threadsPerDomain);
+            searches.put(domain.getKey(), new DomainSearch(pager.start(), deltaClause != null));
+        }
+        // The results are still written in the order of the domains map
+        for (String domain : domains.keySet()) {
+            DomainSearch search = searches.get(domain);
+            if (search != null)
+                batch.results.put(domain, search);
+        }
+        return batch;
+    }
+
+    /**
+     * @return the domains ordered by their average latency, so that the searches of the fastest domains are started
+     * first and domains whose circuit breaker is open, whose searches fail immediately, are started last.
+     */
+    private List<Map.Entry<String, String>> getDomainsByLatency() {
+        final Map<String, Double> latencies = new HashMap<>();
+        for (Map.Entry<String, String> domain : domains.entrySet()) {
+            DomainClient client = clients.getClient(domain.getValue());
+            latencies.put(domain.getKey(),
+                    client.getCircuitBreaker().isOpen() ? Double.MAX_VALUE : client.getLatencyMillis());
+        }
+        List<Map.Entry<String, String>> ordered = new ArrayList<>(domains.entrySet());
+        Collections.sort(ordered, new Comparator<Map.Entry<String, String>>() {
+            @Override
+            public int compare(Map.Entry<String, String> a, Map.Entry<String, String> b) {
+                return Double.compare(latencies.get(a.getKey()), latencies.get(b.getKey()));
+            }
+        });
+        return ordered;
+    }
+
+    private Path getFile(String user) {
+        return outputDir.resolve(user + (gzip ? ".csv.gz" : ".csv"));
+    }
+
+    /**
+     * @return the progress of a partially written user which can be resumed, or null if the user must start again.
+     */
+    private ProgressJournal.UserProgress getResumableProgress(String user) {
+        ProgressJournal.UserProgress progress = journal == null ? null : journal.getProgress(user);
+        // A compressed file cannot be truncated to a consistent point, so it can only be resumed once complete
+        if (progress == null || progress.getDomains().isEmpty() || gzip)
+            return null;
+        try {
+            return Files.size(getFile(user)) >= progress.getOffset() ? progress : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the users of the batch whose issues of the domain are written, as they were not resumed after it.
+     */
+    private List<String> getSearchedUsers(UserBatch batch, String domain) {
+        List<String> users = new ArrayList<>(batch.users.size());
+        for (String user : batch.users) {
+            ProgressJournal.UserProgress progress = batch.progress.get(user);
+            if (progress == null || !progress.getDomains().contains(domain))
+                users.add(user);
+        }
+        return users;
+    }
+
+    private boolean isCompleted(UserBatch batch, String domain) {
+        for (String user : batch.users) {
+            ProgressJournal.UserProgress progress = batch.progress.get(user);
+            if (progress == null || !progress.getDomains().contains(domain))
+                return false;
+        }
+        return true;
+    }
+
+    private ExecutorService getExecutor(final String domain) {
+        ExecutorService executor = domainExecutors.get(domain);
+        if (executor != null)
+            return executor;
+
+        if (virtualThreads) {
+            executor = new VirtualThreadExecutor("search-" + domain, threadsPerDomain);
+        } else {
+            executor = Executors.newFixedThreadPool(threadsPerDomain, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "search-" + domain);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        domainExecutors.put(domain, executor);
+        return executor;
+    }
+
+    private void write(UserBatch batch, WriterStage writerStage) {
+        List<UserOutput> outputs = new ArrayList<>(batch.users.size());
+        try {
+            for (String user : batch.users) {
+                System.out.println("Writing JIRA issues associated with user " + user);
+                UserOutput output = new UserOutput(user, writerStage.getLane(user), batch.progress.get(user));
+                outputs.add(output);
+                output.open();
+            }
+
+            for (Map.Entry<String, DomainSearch> result : batch.results.entrySet()) {
+                String domain = result.getKey();
+                System.out.println("Searched domain " + domain + " at url " + domains.get(domain));
+                writeDomain(domain, result.getValue(), batch, outputs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (IOException e) {
+            System.err.println("Error writing results of batch " + batch.users + ": " + e);
+            return;
+        } finally {
+            for (DomainSearch search : batch.results.values())
+                search.pager.cancel();
+            for (UserOutput output : outputs)
+                output.close();
+        }
+    }
+
+    private void writeDomain(String domain, DomainSearch search, UserBatch batch, List<UserOutput> allOutputs)
+            throws IOException, InterruptedException {
+        // Users who completed the domain in a previous run are only part of the batch for its other domains
+        List<UserOutput> outputs = new ArrayList<>(allOutputs.size());
+        for (UserOutput output : allOutputs) {
+            if (!output.isResumed(domain))
+                outputs.add(output);
+        }
+
+        boolean batched = batch.users.size() > 1;
+        ShardedPager pager = search.pager;
+        List<IssueRecord> page;
+        try {
+            page = pager.nextPage();
+        } catch (JiraException e) {
+            System.err.println("Exception while searching domain " + domain + ": " + e + ": " + e.getCause());
+            recordFailure(batch, domain, e);
+            for (UserOutput output : outputs)
+                output.journalled = false;
+            return;
+        }
+
+        for (UserOutput output : outputs)
+            output.printHeader(domain);
+
+        // Delta results have to be merged with the cached issues before anything can be written, however as they
+        // only contain recently updated issues they are small enough to be held in memory
+        List<IssueRecord> delta = search.delta ? new ArrayList<IssueRecord>() : null;
+        boolean complete = true;
+        while (page != null) {
+            clients.getMetrics().recordIssuesReceived(page.size());
+            for (IssueRecord record : page) {
+                if (issueCache != null)
+                    issueCache.append(domain, record);
+                if (delta != null)
+                    delta.add(record);
+                else
+                    writeRecord(domain, record, outputs, batched);
+            }
+            for (UserOutput output : outputs)
+                output.flush();
+            try {
+                page = pager.hasNextPage() ? pager.nextPage() : null;
+            } catch (JiraException e) {
+                System.err.println("Exception while retrieving further issues from domain " + domain +
+                                   ", results are incomplete: " + e + ": " + e.getCause());
+                recordFailure(batch, domain, e);
+                complete = false;
+                page = null;
+            }
+        }
+
+        if (delta != null) {
+            for (IssueRecord record : issueCache.merge(issueCache.getRecords(domain, batch.users), delta))
+                writeRecord(domain, record, outputs, batched);
+        }
+
+        for (UserOutput output : outputs)
+            output.endDomain(domain, complete);
+
+        if (issueCache != null && complete && !pager.isTruncated())
+            issueCache.checkpoint(domain, batch.users);
+    }
+
+    private void recordFailure(UserBatch batch, String domain, JiraException e) {
+        String reason = e.getCause() == null ? e.getMessage() : e.getMessage() + ": " + e.getCause().getMessage();
+        for (String user : batch.users)
+            runReport.recordFailure(user, domain, reason);
+    }
+
+    private void writeRecord(String domain, IssueRecord record, List<UserOutput> outputs, boolean batched)
+            throws IOException {
+        for (UserOutput output : outputs) {
+            if (output.issuesWritten < issueLimit && (!batched || record.isAssociatedWith(output.user))) {
+                output.add(record);
+                if (columnarExporter != null)
+                    columnarExporter.append(output.user, domain, record);
+                if (rollup != null)
+                    rollup.add(output.user, domain, record);
+            }
+        }
+    }
+
+    private class BatchIterator implements Iterator<UserBatch> {
+        final Iterator<String> usernames;
+        String pending;
+
+        BatchIterator(Iterator<String> usernames) {
+            this.usernames = usernames;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (pending == null && usernames.hasNext()) {
+                String user = usernames.next();
+                if (!isCompleted(user))
+                    pending = user;
+            }
+            return pending != null;
+        }
+
+        @Override
+        public UserBatch next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            String user = nextUser();
+            if (maxQueryLength <= 0)
+                return new UserBatch(Collections.singletonList(user));
+
+            // The first user is always accepted, even if their query alone exceeds the maximum query length
+            List<String> users = new ArrayList<>();
+            users.add(user);
+            int userListLength = JqlQueryBuilder.quote(user).length();
+            int bodyLength = queryBuilder.getBody().length();
+            while (hasNext()) {
+                user = nextUser();
+                int candidateLength = userListLength + 1 + JqlQueryBuilder.quote(user).length();
+                if (JqlQueryBuilder.getBatchClauseLength(candidateLength) + bodyLength > maxQueryLength) {
+                    pending = user;
+                    break;
+                }
+                users.add(user);
+                userListLength = candidateLength;
+            }
+            return new UserBatch(users);
+        }
+
+        private String nextUser() {
+            hasNext();
+            String user = pending;
+            pending = null;
+            return user;
+        }
+
+        /**
+         * Skip the users completed by a previous run, as the users are read.
+         */
+        private boolean isCompleted(String user) {
+            ProgressJournal.UserProgress progress = journal == null ? null : journal.getProgress(user);
+            if (progress == null || !progress.isComplete() || !Files.exists(getFile(user)))
+                return false;
+            System.out.println("Skipping user " + user + ", completed by a previous run");
+            return true;
+        }
+    }
+
+    private static class UserBatch {
+        final List<String> users;
+        final Map<String, DomainSearch> results = new LinkedHashMap<>();
+        final Map<String, ProgressJournal.UserProgress> progress = new HashMap<>();
+
+        UserBatch(List<String> users) {
+            this.users = users;
+        }
+    }
+
+    private static class DomainSearch {
+        final ShardedPager pager;
+        final boolean delta;
+
+        DomainSearch(ShardedPager pager, boolean delta) {
+            this.pager = pager;
+            this.delta = delta;
+        }
+    }
+
+    /**
+     * The output file of a single user. The records to be written are selected on the calling thread, whilst opening,
+     * writing and closing the file are performed in order by the user's writer lane.
+     */
+    private class UserOutput {
+        final String user;
+        final Path file;
+        final WriterStage.Lane lane;
+        final ProgressJournal.UserProgress resumed;
+        List<IssueRecord> pending = new ArrayList<>();
+        int issuesWritten;
+        // True whilst every domain written so far has been complete, so that the journal only ever records a prefix
+        // of the domains and a resumed file keeps the domain order
+        boolean journalled = true;
+        // Only accessed by the lane's writer thread
+        FileChannel channel;
+        CsvRecordWriter printer;
+        boolean failed;
+
+        UserOutput(String user, WriterStage.Lane lane, ProgressJournal.UserProgress resumed) {
+            this.user = user;
+            this.file = getFile(user);
+            this.lane = lane;
+            this.resumed = resumed;
+        }
+
+        boolean isResumed(String domain) {
+            return resumed != null && resumed.getDomains().contains(domain);
+        }
+
+        void open() throws InterruptedException {
+            if (resumed != null)
+                System.out.println("Resuming user " + user + " after domains " + resumed.getDomains());
+            submit(new OutputTask() {
+                @Override
+                public void run() throws IOException {
+                    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    if (resumed != null) {
+                        // Discard anything written after the last completed domain
+                        channel.truncate(resumed.getOffset());
+                        channel.position(resumed.getOffset());
+                    } else {
+                        channel.truncate(0);
+                        if (journal != null && journal.getProgress(user) != null)
+                            journal.recordReset(user);
+                    }
+                    OutputStream out = Channels.newOutputStream(channel);
+                    if (gzip)
+                        out = new GZIPOutputStream(out, BUFFER_SIZE);
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(out, Charset.defaultCharset()),
+                            BUFFER_SIZE);
+                    printer = new CsvRecordWriter(writer, csvFormat);
+                }
+            });
+        }
+
+        void printHeader(final String domain) throws InterruptedException {
+            issuesWritten = 0;
+            submit(new OutputTask() {
+                @Override
+                public void run() throws IOException {
+                    printer.printRecord(domain + " Issues");
+                    printer.printRecord(comments ? IssueProcessor.CSV_HEADERS_WITH_COMMENTS
+                            : IssueProcessor.CSV_HEADERS);
+                }
+            });
+        }
+
+        void add(IssueRecord record) {
+            pending.add(record);
+            issuesWritten++;
+        }
+
+        /**
+         * Hand the records added since the last flush to the writer lane.
+         */
+        void flush() throws InterruptedException {
+            if (pending.isEmpty())
+                return;
+            final List<IssueRecord> records = pending;
+            pending = new ArrayList<>();
+            submit(new OutputTask() {
+                @Override
+                public void run() throws IOException {
+                    long start = System.nanoTime();
+                    for (IssueRecord record : records) {
+                        if (comments)
+                            IssueProcessor.printRecord(record, user, printer);
+                        else
+                            IssueProcessor.printRecord(record, printer);
+                    }
+                    clients.getMetrics().recordCsvWrite(System.nanoTime() - start, records.size());
+                }
+            });
+        }
+
+        void endDomain(final String domain, boolean complete) throws InterruptedException {
+            flush();
+            journalled &= complete;
+            final boolean record = journal != null && journalled && !gzip;
+            submit(new OutputTask() {
+                @Override
+                public void run() throws IOException {
+                    printer.println();
+                    if (record) {
+                        printer.flush();
+                        channel.force(false);
+                        journal.recordDomain(user, domain, channel.position());
+                    }
+                }
+            });
+        }
+
+        void close() {
+            try {
+                flush();
+                final boolean record = journal != null && journalled;
+                lane.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (printer == null)
+                            return;
+                        try {
+                            printer.close();
+                            if (record && !failed) {
+                                // Closing the printer also closes the channel, and completes a compressed file
+                                try (FileChannel closed = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                                    closed.force(false);
+                                }
+                                journal.recordComplete(user);
+                            }
+                            if (!failed)
+                                System.out.println("All domains searched and results have been output to " +
+                                                   file.getFileName());
+                        } catch (IOException e) {
+                            System.err.println("Error closing " + file.getFileName() + ": " + e);
+                        }
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void submit(final OutputTask task) throws InterruptedException {
+            lane.submit(new Runnable() {
+                @Override
+                public void run() {
+                    if (failed)
+                        return;
+                    try {
+                        task.run();
+                    } catch (IOException e) {
+                        failed = true;
+                        System.err.println("Error writing " + file.getFileName() + ": " + e);
+                    }
+                }
+            });
+        }
+    }
+
+    private interface OutputTask {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.ParseException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps a {@link ReportRunner} resident, so that reports run with warm connections, caches and code. Reports are
+ * requested over a local HTTP API and can also be run on a fixed schedule. All reports are executed one at a time on
+ * a single thread, in the order that they were requested, whilst the requests themselves are handled concurrently so
+ * that the status can be requested and the server shut down during a report.
+ * <p>
+ * The API is bound to the loopback address only, and every request must carry the server's token in an
+ * <code>Authorization: Bearer</code> header. The token is generated when the server starts and is written to
+ * {@value #TOKEN_FILE} in the server's output directory, readable by its owner only, so that other local users and
+ * web pages cannot request reports. A requested report may only set the options which select its users, dates and
+ * output format, its output directory is resolved within the server's output directory and it always searches the
+ * server's domains.
+ * <ul>
+ * <li><code>POST /report</code> runs a report, the request body contains the same whitespace separated arguments
+ * that are accepted on the command line. The response contains the report's failures once it has completed.</li>
+ * <li><code>GET /status</code> returns the number of reports run and the runner's connection statistics.</li>
+ * <li><code>POST /shutdown</code> stops the server once the current report has completed.</li>
+ * </ul>
+ *
+ * @author Ryan Emerson
+ */
+public class ReportServer implements AutoCloseable {
+
+    public static final String TOKEN_FILE = ".jira-reporter-server.token";
+
+    // Options which read or write files, or select the domains, can only be set when the server is started
+    private static final Set<String> REMOTE_OPTIONS = new HashSet<>(Arrays.asList("usernames", "startDate", "endDate",
+            "lifo", "batch", "gzip", "resume", "comments", "virtualThreads", "csvFormat", "issueLimit", "pageSize",
+            "threads", "maxQueryLength", "shardSize", "writerThreads", "outputDir"));
+
+    private final ReportRunner runner;
+    private final CommandLineParser serverParser;
+    private final String token;
+    private final Path tokenFile;
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final ScheduledExecutorService executor;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final AtomicInteger reportsRun = new AtomicInteger();
+
+    /**
+     * @param serverParser the arguments the server was started with, which determine its port, schedule, output
+     *                     directory and domains. The report they describe is run on the schedule, if any.
+     */
+    public ReportServer(ReportRunner runner, final CommandLineParser serverParser) throws IOException {
+        this.runner = runner;
+        this.serverParser = serverParser;
+        this.token = newToken();
+        this.tokenFile = serverParser.getOutputDir().resolve(TOKEN_FILE);
+        writeToken(tokenFile, token);
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "report-runner");
+            }
+        });
+        if (serverParser.getSchedule() > 0) {
+            executor.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        runReport(serverParser);
+                    } catch (IOException | RuntimeException e) {
+                        // An exception would cancel all subsequent runs of the schedule
+                        System.err.println("Error running scheduled report: " + e);
+                    }
+                }
+            }, 0, serverParser.getSchedule(), TimeUnit.MINUTES);
+        }
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                serverParser.getServerPort()), 0);
+        // Requests are handled on their own threads, so that the status can be requested whilst a report is running
+        handlers = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "report-server");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        server.setExecutor(handlers);
+        server.createContext("/report", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handleReport(exchange);
+            }
+        });
+        server.createContext("/status", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handleStatus(exchange);
+            }
+        });
+        server.createContext("/shutdown", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (!authorize(exchange) || !requireMethod(exchange, "POST"))
+                    return;
+                respond(exchange, 200, "Shutting down\n");
+                stopped.countDown();
+            }
+        });
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return the token which every request must carry in an <code>Authorization: Bearer</code> header.
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * @return the file which the token is written to.
+     */
+    public Path getTokenFile() {
+        return tokenFile;
+    }
+
+    /**
+     * Block until the server is shut down via the API.
+     */
+    public void awaitShutdown() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * Stop accepting requests and wait for the current report to complete.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        server.stop(0);
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        handlers.shutdownNow();
+        stopped.countDown();
+        try {
+            Files.deleteIfExists(tokenFile);
+        } catch (IOException e) {
+            System.err.println("Unable to delete the server token file " + tokenFile + ": " + e);
+        }
+    }
+
+    private RunReport runReport(CommandLineParser parser) throws IOException {
+        RunReport report = runner.run(parser);
+        reportsRun.incrementAndGet();
+        return report;
+    }
+
+    private void handleReport(HttpExchange exchange) throws IOException {
+        if (!authorize(exchange) || !requireMethod(exchange, "POST"))
+            return;
+
+        String body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = readFully(in).trim();
+        }
+        String[] args = body.isEmpty() ? new String[0] : body.split("\\s+");
+        final CommandLineParser parser = new CommandLineParser(args);
+        List<String> arguments = Arrays.asList(args);
+        if (arguments.contains("-h") || arguments.contains("--help")) {
+            respond(exchange, 200, getHelp(parser, null));
+            return;
+        }
+        try {
+            String rejected = getRejectedOption(parser, args);
+            if (rejected != null) {
+                respond(exchange, 403, "The " + rejected + " option cannot be set by a requested report\n");
+                return;
+            }
+            parser.parse();
+            parser.restrictTo(serverParser);
+        } catch (ParseException e) {
+            respond(exchange, 400, getHelp(parser, "Error parsing report arguments: " + e.getMessage()));
+            return;
+        }
+
+        Future<RunReport> result = executor.submit(new Callable<RunReport>() {
+            @Override
+            public RunReport call() throws Exception {
+                return runReport(parser);
+            }
+        });
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (PrintStream printer = new PrintStream(out, true, "UTF-8")) {
+                result.get().print(printer);
+            }
+            respond(exchange, 200, out.toString("UTF-8"));
+        } catch (ExecutionException e) {
+            respond(exchange, 500, "Error running report: " + e.getCause() + "\n");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "Interrupted whilst waiting for the report\n");
+        }
+    }
+
+    private void handleStatus(HttpExchange exchange) throws IOException {
+        if (!authorize(exchange) || !requireMethod(exchange, "GET"))
+            return;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PrintStream printer = new PrintStream(out, true, "UTF-8")) {
+            printer.println("Reports run: " + reportsRun.get());
+            runner.printStats(printer);
+        }
+        respond(exchange, 200, out.toString("UTF-8"));
+    }
+
+    private boolean authorize(HttpExchange exchange) throws IOException {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        byte[] expected = ("Bearer " + token).getBytes(StandardCharsets.UTF_8);
+        // Compared in constant time, so that the token cannot be guessed from the response times
+        if (authorization != null && MessageDigest.isEqual(expected, authorization.getBytes(StandardCharsets.UTF_8)))
+            return true;
+        exchange.getResponseHeaders().add("WWW-Authenticate", "Bearer");
+        respond(exchange, 401, "The server token from " + TOKEN_FILE + " is required\n");
+        return false;
+    }
+
+    /**
+     * @return the first option of the arguments which a requested report may not set, or null if every option may
+     * be set.
+     */
+    private static String getRejectedOption(CommandLineParser parser, String[] args) throws ParseException {
+        CommandLine cmd = new DefaultParser().parse(parser.getOptions(), args);
+        for (Option option : cmd.getOptions()) {
+            String name = option.getLongOpt() != null ? option.getLongOpt() : option.getOpt();
+            if (!REMOTE_OPTIONS.contains(name))
+                return name;
+        }
+        return null;
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+            sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    private static void writeToken(Path file, String token) throws IOException {
+        Files.deleteIfExists(file);
+        try {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            // The file system does not support POSIX permissions, so the default permissions are used
+            Files.createFile(file);
+        }
+        Files.write(file, token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean requireMethod(HttpExchange exchange, String method) throws IOException {
+        if (exchange.getRequestMethod().equalsIgnoreCase(method))
+            return true;
+        exchange.getResponseHeaders().add("Allow", method);
+        respond(exchange, 405, "Method not allowed, use " + method + "\n");
+        return false;
+    }
+
+    private static String getHelp(CommandLineParser parser, String error) {
+        StringWriter writer = new StringWriter();
+        PrintWriter printer = new PrintWriter(writer);
+        if (error != null)
+            printer.println(error);
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp(printer, formatter.getWidth(), "POST /report", null, parser.getOptions(),
+                formatter.getLeftPadding(), formatter.getDescPadding(), null);
+        printer.flush();
+        return writer.toString();
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int read = in.read(buffer); read >= 0; read = in.read(buffer))
+            out.write(buffer, 0, read);
+        return out.toString("UTF-8");
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import net.rcarz.jiraclient.RestException;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Bounded exponential backoff for requests which failed due to throttling, server unavailability or I/O errors.
+ *
+ * @author Ryan Emerson
+ */
+public class RetryPolicy {
+
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    public RetryPolicy(int maxRetries, long baseDelayMillis, long maxDelayMillis) {
+        this.maxRetries = maxRetries;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * @param retry the number of the retry about to be attempted, starting at 1.
+     * @return the delay before the retry, with full jitter so that concurrent searches do not retry in lockstep.
+     */
+    public long getDelayMillis(int retry) {
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(30, retry - 1));
+        return ThreadLocalRandom.current().nextLong(0, ceiling + 1);
+    }
+
+    /**
+     * @return true if the failure is transient and the request should be retried.
+     */
+    public static boolean isRetryable(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RestException)
+                return isRetryable(((RestException) cause).getHttpStatusCode());
+            if (cause instanceof IOException)
+                return true;
+        }
+        return false;
+    }
+
+    public static boolean isRetryable(int httpStatus) {
+        return httpStatus == 429 || httpStatus == 502 || httpStatus == 503 || httpStatus == 504;
+    }
+}
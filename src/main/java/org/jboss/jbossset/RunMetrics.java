@@ -0,0 +1,246 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Instrumentation of a report run, exported in the Prometheus text format. For each domain, the time spent resolving
+ * hosts, waiting for response headers and reading and parsing response bodies is recorded in histograms, alongside
+ * the bytes received and the number of failed requests. Run wide counters record the issues received and written and
+ * the time spent writing CSV files.
+ *
+ * @author Ryan Emerson
+ */
+public class RunMetrics {
+
+    private static final String PREFIX = "jira_reporter_";
+
+    private final long startNanos = System.nanoTime();
+    private final Map<String, DomainMetrics> domains = new LinkedHashMap<>();
+    private final LongAdder issuesReceived = new LongAdder();
+    private final LongAdder issuesWritten = new LongAdder();
+    private final LongAdder csvWriteNanos = new LongAdder();
+
+    public synchronized DomainMetrics getDomainMetrics(String domain) {
+        DomainMetrics metrics = domains.get(domain);
+        if (metrics == null) {
+            metrics = new DomainMetrics();
+            domains.put(domain, metrics);
+        }
+        return metrics;
+    }
+
+    public void recordIssuesReceived(int issues) {
+        issuesReceived.add(issues);
+    }
+
+    public void recordCsvWrite(long nanos, int issues) {
+        csvWriteNanos.add(nanos);
+        issuesWritten.add(issues);
+    }
+
+    public long getIssuesReceived() {
+        return issuesReceived.sum();
+    }
+
+    public long getIssuesWritten() {
+        return issuesWritten.sum();
+    }
+
+    /**
+     * Write all metrics in the Prometheus text format.
+     *
+     * @param connectionStats the connection statistics of each domain, which are exported alongside its metrics.
+     */
+    public synchronized void writePrometheus(Writer out,
+                                             Map<String, DomainClientRegistry.ConnectionStats> connectionStats)
+            throws IOException {
+        double elapsedSeconds = toSeconds(System.nanoTime() - startNanos);
+        gauge(out, "elapsed_seconds", "Time since the run started.", elapsedSeconds);
+        counter(out, "issues_received_total", "Issues received from all domains.", getIssuesReceived());
+        counter(out, "issues_written_total", "Issue rows written to all CSV files.", getIssuesWritten());
+        gauge(out, "issues_per_second", "Issues received per second since the run started.",
+                elapsedSeconds > 0 ? getIssuesReceived() / elapsedSeconds : 0);
+        counter(out, "csv_write_seconds_total", "Time spent writing CSV files.", toSeconds(csvWriteNanos.sum()));
+
+        header(out, "requests_total", "counter", "HTTP requests sent to a domain.");
+        for (Map.Entry<String, DomainClientRegistry.ConnectionStats> entry : connectionStats.entrySet())
+            sample(out, "requests_total", label(entry.getKey()), entry.getValue().getRequests());
+        header(out, "retries_total", "counter", "Requests retried after a transient failure.");
+        for (Map.Entry<String, DomainClientRegistry.ConnectionStats> entry : connectionStats.entrySet())
+            sample(out, "retries_total", label(entry.getKey()), entry.getValue().getRetries());
+        header(out, "connections_opened_total", "counter", "Connections opened to a domain.");
+        for (Map.Entry<String, DomainClientRegistry.ConnectionStats> entry : connectionStats.entrySet())
+            sample(out, "connections_opened_total", label(entry.getKey()), entry.getValue().getConnectionsOpened());
+
+        header(out, "errors_total", "counter", "Requests which failed with an error response or exception.");
+        for (Map.Entry<String, DomainMetrics> entry : domains.entrySet())
+            sample(out, "errors_total", label(entry.getKey()), entry.getValue().errors.sum());
+        header(out, "received_bytes_total", "counter", "Response body bytes received from a domain.");
+        for (Map.Entry<String, DomainMetrics> entry : domains.entrySet())
+            sample(out, "received_bytes_total", label(entry.getKey()), entry.getValue().bytesReceived.sum());
+
+        writeHistograms(out, "dns_seconds", "Time taken to resolve a domain's host.", HistogramType.DNS);
+        writeHistograms(out, "response_latency_seconds", "Time until a response's headers are received.",
+                HistogramType.LATENCY);
+        writeHistograms(out, "response_read_seconds", "Time taken to read and parse a response body.",
+                HistogramType.READ);
+        out.flush();
+    }
+
+    private void writeHistograms(Writer out, String name, String help, HistogramType type) throws IOException {
+        header(out, name, "histogram", help);
+        for (Map.Entry<String, DomainMetrics> entry : domains.entrySet())
+            entry.getValue().get(type).write(out, PREFIX + name, label(entry.getKey()));
+    }
+
+    private static void gauge(Writer out, String name, String help, double value) throws IOException {
+        header(out, name, "gauge", help);
+        sample(out, name, "", value);
+    }
+
+    private static void counter(Writer out, String name, String help, double value) throws IOException {
+        header(out, name, "counter", help);
+        sample(out, name, "", value);
+    }
+
+    private static void header(Writer out, String name, String type, String help) throws IOException {
+        out.write("# HELP " + PREFIX + name + " " + help + "\n");
+        out.write("# TYPE " + PREFIX + name + " " + type + "\n");
+    }
+
+    private static void sample(Writer out, String name, String labels, double value) throws IOException {
+        out.write(PREFIX + name + labels + " " + format(value) + "\n");
+    }
+
+    private static String label(String domain) {
+        return "{domain=\"" + domain.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}";
+    }
+
+    static String format(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value))
+            return Long.toString((long) value);
+        return Double.toString(value);
+    }
+
+    static double toSeconds(long nanos) {
+        return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private enum HistogramType {
+        DNS, LATENCY, READ
+    }
+
+    /**
+     * The metrics of a single domain.
+     */
+    public static class DomainMetrics {
+        final Histogram dnsTime = new Histogram();
+        final Histogram responseLatency = new Histogram();
+        final Histogram responseReadTime = new Histogram();
+        final LongAdder bytesReceived = new LongAdder();
+        final LongAdder errors = new LongAdder();
+
+        public void recordDnsLookup(long nanos) {
+            dnsTime.record(nanos);
+        }
+
+        public void recordResponse(long latencyNanos, long readNanos) {
+            responseLatency.record(latencyNanos);
+            responseReadTime.record(readNanos);
+        }
+
+        public void recordBytesReceived(long bytes) {
+            bytesReceived.add(bytes);
+        }
+
+        public void recordError() {
+            errors.increment();
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived.sum();
+        }
+
+        public long getResponses() {
+            return responseLatency.getCount();
+        }
+
+        Histogram get(HistogramType type) {
+            switch (type) {
+                case DNS:
+                    return dnsTime;
+                case LATENCY:
+                    return responseLatency;
+                default:
+                    return responseReadTime;
+            }
+        }
+    }
+
+    /**
+     * A fixed bucket histogram of durations which can be updated concurrently without locking.
+     */
+    static class Histogram {
+        private static final double[] BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30};
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS.length + 1);
+        private final LongAdder sumNanos = new LongAdder();
+
+        void record(long nanos) {
+            double seconds = toSeconds(nanos);
+            int bucket = 0;
+            while (bucket < BUCKETS.length && seconds > BUCKETS[bucket])
+                bucket++;
+            counts.incrementAndGet(bucket);
+            sumNanos.add(nanos);
+        }
+
+        long getCount() {
+            long count = 0;
+            for (int i = 0; i < counts.length(); i++)
+                count += counts.get(i);
+            return count;
+        }
+
+        void write(Writer out, String name, String labels) throws IOException {
+            // Buckets are cumulative and labelled by their upper bound
+            String prefix = labels.substring(0, labels.length() - 1) + ",le=\"";
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                cumulative += counts.get(i);
+                out.write(name + "_bucket" + prefix + format(BUCKETS[i]) + "\"} " + cumulative + "\n");
+            }
+            cumulative += counts.get(BUCKETS.length);
+            out.write(name + "_bucket" + prefix + "+Inf\"} " + cumulative + "\n");
+            out.write(name + "_sum" + labels + " " + format(toSeconds(sumNanos.sum())) + "\n");
+            out.write(name + "_count" + labels + " " + cumulative + "\n");
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records the user/domain pairs whose issues could not be retrieved, even after retrying, so that they can be listed
+ * at the end of a run rather than being lost amongst the progress output.
+ *
+ * @author Ryan Emerson
+ */
+public class RunReport {
+
+    private final List<Failure> failures = new ArrayList<>();
+
+    public synchronized void recordFailure(String user, String domain, String reason) {
+        failures.add(new Failure(user, domain, reason));
+    }
+
+    public synchronized List<Failure> getFailures() {
+        return Collections.unmodifiableList(new ArrayList<>(failures));
+    }
+
+    public synchronized void print(PrintStream out) {
+        if (failures.isEmpty()) {
+            out.println("All user/domain searches completed successfully");
+            return;
+        }
+        out.println(failures.size() + " user/domain searches failed and their results are missing or incomplete:");
+        for (Failure failure : failures)
+            out.println("    " + failure);
+    }
+
+    public static class Failure {
+        private final String user;
+        private final String domain;
+        private final String reason;
+
+        Failure(String user, String domain, String reason) {
+            this.user = user;
+            this.domain = domain;
+            this.reason = reason;
+        }
+
+        public String getUser() {
+            return user;
+        }
+
+        public String getDomain() {
+            return domain;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return user + " @ " + domain + ": " + reason;
+        }
+    }
+}
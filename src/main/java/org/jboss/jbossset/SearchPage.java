@@ -0,0 +1,88 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import net.rcarz.jiraclient.JiraException;
+import net.rcarz.jiraclient.Resource;
+import net.rcarz.jiraclient.RestClient;
+import net.sf.json.JSON;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single page of search results. Unlike {@link net.rcarz.jiraclient.Issue#search}, only the requested fields are
+ * retrieved and each issue is converted directly from the response to an {@link IssueRecord}, without creating the
+ * client's Issue, Project and User objects.
+ *
+ * @author Ryan Emerson
+ */
+public class SearchPage {
+
+    public final int start;
+    public final int total;
+    public final List<IssueRecord> issues;
+
+    SearchPage(int start, int total, List<IssueRecord> issues) {
+        this.start = start;
+        this.total = total;
+        this.issues = issues;
+    }
+
+    /**
+     * @param fields a comma separated list of the issue fields to be returned by the search.
+     */
+    public static SearchPage search(RestClient client, String jql, String fields, int maxResults, int startAt)
+            throws JiraException {
+        Map<String, String> params = new HashMap<>();
+        params.put("jql", jql);
+        params.put("fields", fields);
+        params.put("maxResults", String.valueOf(maxResults));
+        params.put("startAt", String.valueOf(startAt));
+
+        JSON result;
+        try {
+            URI uri = client.buildURI(Resource.getBaseUri() + "search", params);
+            result = client.get(uri);
+        } catch (Exception e) {
+            throw new JiraException("Failed to search issues", e);
+        }
+
+        if (!(result instanceof JSONObject))
+            throw new JiraException("JSON payload is malformed");
+
+        JSONObject json = (JSONObject) result;
+        JSONArray array = json.optJSONArray("issues");
+        List<IssueRecord> issues = new ArrayList<>(array == null ? 0 : array.size());
+        if (array != null) {
+            for (Object issue : array)
+                if (issue instanceof JSONObject)
+                    issues.add(IssueRecord.from((JSONObject) issue));
+        }
+        return new SearchPage(json.optInt("startAt"), json.optInt("total"), issues);
+    }
+}
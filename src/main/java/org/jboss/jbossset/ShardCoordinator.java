@@ -0,0 +1,135 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The coordinator of a distributed run. The coordinator does not search any users itself, it writes the initial
+ * assignment of shards to workers, monitors the workers' heartbeats and reassigns the incomplete shards of any worker
+ * whose heartbeat has stopped to the next live worker on the {@link ShardPlan}'s ring. Once every shard is complete
+ * the workers' manifests are merged into the run manifest, which also tells the workers to stop.
+ * <p>
+ * A worker which has not sent a heartbeat within the timeout of the coordinator starting is considered dead, so all
+ * workers should be started at about the same time as the coordinator.
+ *
+ * @author Ryan Emerson
+ */
+public class ShardCoordinator {
+
+    private final WorkDirectory workDir;
+    private final ShardPlan plan;
+    private final long timeoutNanos;
+    private final long pollMillis;
+
+    public ShardCoordinator(CommandLineParser parser) throws IOException {
+        this.workDir = new WorkDirectory(parser.getWorkDir());
+        this.plan = new ShardPlan(parser.getUsernames(), parser.getShards(), parser.getWorkers());
+        this.timeoutNanos = TimeUnit.SECONDS.toNanos(parser.getWorkerTimeout());
+        this.pollMillis = Math.max(100, TimeUnit.SECONDS.toMillis(parser.getWorkerTimeout()) / 4);
+    }
+
+    /**
+     * Wait for every shard to be completed, reassigning the shards of dead workers.
+     *
+     * @return the merged manifest of the run.
+     */
+    public Properties run() throws IOException, InterruptedException {
+        int[] assignment = workDir.readAssignment(plan);
+        workDir.writeAssignment(assignment);
+
+        long[] heartbeats = new long[plan.getWorkers()];
+        long[] lastSeen = new long[plan.getWorkers()];
+        // Any first reading, including no heartbeat, counts as a sign of life so that workers have a full timeout to
+        // start
+        Arrays.fill(heartbeats, Long.MIN_VALUE);
+        boolean noLiveWorkers = false;
+        while (true) {
+            Properties[] manifests = new Properties[plan.getShardCount()];
+            boolean complete = true;
+            for (int shard = 0; shard < manifests.length; shard++) {
+                manifests[shard] = workDir.readManifest(shard);
+                complete &= manifests[shard] != null;
+            }
+            if (complete)
+                return merge(manifests);
+
+            long now = System.nanoTime();
+            List<Integer> live = new ArrayList<>();
+            for (int worker = 0; worker < heartbeats.length; worker++) {
+                long heartbeat = workDir.readHeartbeat(worker);
+                if (heartbeat != heartbeats[worker]) {
+                    heartbeats[worker] = heartbeat;
+                    lastSeen[worker] = now;
+                }
+                if (now - lastSeen[worker] < timeoutNanos)
+                    live.add(worker);
+            }
+
+            boolean reassigned = false;
+            for (int shard = 0; shard < assignment.length; shard++) {
+                if (manifests[shard] != null || live.contains(assignment[shard]))
+                    continue;
+                int worker = plan.getWorker(shard, live);
+                if (worker >= 0) {
+                    System.out.println("Reassigning shard " + shard + " from worker " + assignment[shard] +
+                                       " to worker " + worker);
+                    assignment[shard] = worker;
+                    reassigned = true;
+                }
+            }
+            if (reassigned)
+                workDir.writeAssignment(assignment);
+
+            if (live.isEmpty() && !noLiveWorkers)
+                System.err.println("No workers are alive, waiting for a worker to be started");
+            noLiveWorkers = live.isEmpty();
+            Thread.sleep(pollMillis);
+        }
+    }
+
+    private Properties merge(Properties[] manifests) throws IOException {
+        Properties merged = new Properties();
+        int users = 0;
+        int failures = 0;
+        for (int shard = 0; shard < manifests.length; shard++) {
+            Properties manifest = manifests[shard];
+            users += Integer.parseInt(manifest.getProperty("users"));
+            failures += Integer.parseInt(manifest.getProperty("failures"));
+            merged.setProperty("shard." + shard, manifest.getProperty("worker") + "," +
+                    manifest.getProperty("users") + "," + manifest.getProperty("failures") + "," +
+                    manifest.getProperty("completed"));
+        }
+        merged.setProperty("shards", String.valueOf(manifests.length));
+        merged.setProperty("users", String.valueOf(users));
+        merged.setProperty("failures", String.valueOf(failures));
+        workDir.writeRunManifest(merged);
+        System.out.println("All " + manifests.length + " shards of " + users + " users are complete, with " +
+                           failures + " failed searches");
+        return merged;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Partitions a user list deterministically between the workers of a distributed run, so that every process computes
+ * the same partition from the same arguments without communicating. Users are hashed into a fixed number of shards,
+ * which are the unit of work that is assigned, completed and reassigned, and each shard is mapped to a worker by a
+ * consistent hash ring with many virtual nodes per worker. When a worker dies only its shards move, each to the next
+ * live worker on the ring, so the shards of the live workers are never redistributed.
+ *
+ * @author Ryan Emerson
+ */
+public class ShardPlan {
+
+    private static final int VIRTUAL_NODES = 128;
+
+    private final List<List<String>> shards;
+    private final int workers;
+    private final TreeMap<Long, Integer> ring = new TreeMap<>();
+
+    public ShardPlan(Collection<String> users, int shardCount, int workers) {
+        this.workers = workers;
+        this.shards = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++)
+            shards.add(new ArrayList<String>());
+        for (String user : users)
+            shards.get(getShard(user, shardCount)).add(user);
+
+        for (int worker = 0; worker < workers; worker++)
+            for (int node = 0; node < VIRTUAL_NODES; node++)
+                ring.put(hash("worker-" + worker + "#" + node), worker);
+    }
+
+    /**
+     * JIRA usernames are case insensitive, so the shard of a user is independent of its case.
+     */
+    static int getShard(String user, int shardCount) {
+        return (int) Long.remainderUnsigned(hash(user.toLowerCase()), shardCount);
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public List<String> getUsers(int shard) {
+        return shards.get(shard);
+    }
+
+    /**
+     * @return the worker which the shard is assigned to when every worker is alive.
+     */
+    public int getWorker(int shard) {
+        return getWorker(shard, null);
+    }
+
+    /**
+     * @param live the workers which are alive, or null if every worker is alive.
+     * @return the first live worker at or after the shard's position on the ring, or -1 if no worker is alive.
+     */
+    public int getWorker(int shard, Collection<Integer> live) {
+        long position = hash("shard-" + shard);
+        // Walk clockwise from the shard's position, wrapping around to the start of the ring
+        List<Map<Long, Integer>> arcs = new ArrayList<>(2);
+        arcs.add(ring.tailMap(position, true));
+        arcs.add(ring.headMap(position, false));
+        for (Map<Long, Integer> arc : arcs) {
+            for (int worker : arc.values())
+                if (live == null || live.contains(worker))
+                    return worker;
+        }
+        return -1;
+    }
+
+    /**
+     * A 64 bit FNV-1a hash followed by a finalising mix, which unlike {@link String#hashCode()} spreads similar
+     * usernames and node names evenly around the ring.
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ hash >>> 33;
+    }
+}
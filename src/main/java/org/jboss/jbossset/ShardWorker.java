@@ -0,0 +1,130 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A worker of a distributed run, which searches the users of every shard assigned to it in the shared
+ * {@link WorkDirectory} and writes a manifest once each shard is complete. The worker keeps polling the assignment
+ * after its own shards are complete, as the coordinator may reassign the shards of a worker that has died, until
+ * every shard of the run is complete.
+ *
+ * @author Ryan Emerson
+ */
+public class ShardWorker {
+
+    private final ReportRunner runner;
+    private final CommandLineParser parser;
+    private final WorkDirectory workDir;
+    private final ShardPlan plan;
+    private final int worker;
+    private final long heartbeatMillis;
+
+    public ShardWorker(ReportRunner runner, CommandLineParser parser) throws IOException {
+        this.runner = runner;
+        this.parser = parser;
+        this.workDir = new WorkDirectory(parser.getWorkDir());
+        this.plan = new ShardPlan(parser.getUsernames(), parser.getShards(), parser.getWorkers());
+        this.worker = parser.getWorkerId();
+        // Several heartbeats are sent within each timeout, so a single delayed heartbeat is never mistaken for death
+        this.heartbeatMillis = Math.max(100, TimeUnit.SECONDS.toMillis(parser.getWorkerTimeout()) / 4);
+    }
+
+    /**
+     * @return the number of shards completed by this worker.
+     */
+    public int run() throws IOException, InterruptedException {
+        ScheduledExecutorService heartbeat = startHeartbeat();
+        int completed = 0;
+        try {
+            while (!workDir.isComplete()) {
+                int shard = getNextShard();
+                if (shard < 0) {
+                    if (isEveryShardComplete())
+                        break;
+                    Thread.sleep(heartbeatMillis);
+                    continue;
+                }
+
+                List<String> users = plan.getUsers(shard);
+                System.out.println("Worker " + worker + " searching shard " + shard + " of " + users.size() + " users");
+                int failures = 0;
+                if (!users.isEmpty())
+                    failures = runner.run(parser, users, false).getFailures().size();
+                workDir.writeManifest(shard, worker, users.size(), failures);
+                completed++;
+            }
+        } finally {
+            heartbeat.shutdownNow();
+        }
+        return completed;
+    }
+
+    /**
+     * @return the first incomplete shard currently assigned to this worker, or -1 if there is none.
+     */
+    private int getNextShard() throws IOException {
+        int[] assignment = workDir.readAssignment(plan);
+        for (int shard = 0; shard < assignment.length; shard++)
+            if (assignment[shard] == worker && workDir.readManifest(shard) == null)
+                return shard;
+        return -1;
+    }
+
+    private boolean isEveryShardComplete() throws IOException {
+        for (int shard = 0; shard < plan.getShardCount(); shard++)
+            if (workDir.readManifest(shard) == null)
+                return false;
+        return true;
+    }
+
+    private ScheduledExecutorService startHeartbeat() throws IOException {
+        final AtomicLong counter = new AtomicLong();
+        workDir.writeHeartbeat(worker, counter.get());
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "worker-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    workDir.writeHeartbeat(worker, counter.incrementAndGet());
+                } catch (IOException e) {
+                    System.err.println("Unable to write the heartbeat of worker " + worker + ": " + e);
+                }
+            }
+        }, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+        return executor;
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import net.rcarz.jiraclient.JiraException;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits a search into windows of issue update times, which are retrieved in parallel by a separate
+ * {@link IssuePager} per window and returned one after the other, so that the issues are returned in the same order
+ * as the unsplit search. The windows partition the update times: the first window is unbounded below and the last
+ * unbounded above, so every issue matched by the search belongs to exactly one window.
+ * <p>
+ * The windows are chosen adaptively. The number of issues in each window is probed with a search which returns no
+ * issues, and a window which holds more than the shard size is split into up to eight parts, until every window
+ * either fits the shard size or spans a single minute. A window is split as soon as its probe completes, without
+ * waiting for the other probes, so the probes of a search run concurrently with each other and with the pages of
+ * other searches. Only the windows required to reach the maximum number of issues are searched, and at most
+ * shardsInFlight of their pagers are started ahead of the pager being consumed, which bounds the number of pages
+ * held in memory.
+ * <p>
+ * Without sharding the search is retrieved by a single {@link IssuePager}.
+ *
+ * @author Ryan Emerson
+ */
+public class ShardedPager {
+
+    private static final DateTimeFormatter JQL_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final String COUNT_FIELD = "key";
+    private static final int MAX_SPLIT = 8;
+
+    private final ExecutorService executor;
+    private final DomainClient client;
+    private final JqlQueryBuilder queryBuilder;
+    private final List<String> users;
+    private final String clauses;
+    private final String fields;
+    private final int pageSize;
+    private final int maxIssues;
+    // Guards the state of the probes, which are split and completed on the executor's threads
+    private final Object probeLock = new Object();
+    private final List<Future<?>> probes = new ArrayList<>();
+    private final List<Window> windows = new ArrayList<>();
+    private int pendingProbes;
+    private Throwable probeFailure;
+    private boolean cancelled;
+    private IssueStore issueStore;
+    private String domain;
+    private UserIssueLimit userLimit;
+    private long rangeStart;
+    private long rangeEnd;
+    private boolean descending;
+    private int shardSize;
+    private int shardsInFlight;
+    private List<IssuePager> shards;
+    private int current;
+    private int started;
+    private int issuesFetched;
+    private boolean truncated;
+
+    /**
+     * @param users     the users whose issues are searched for.
+     * @param clauses   further restrictions of the search, which are combined with the window clauses.
+     * @param maxIssues the maximum number of issues that will be returned across all windows.
+     */
+    public ShardedPager(ExecutorService executor, DomainClient client, JqlQueryBuilder queryBuilder,
+                        List<String> users, String clauses, String fields, int pageSize, int maxIssues) {
+        this.executor = executor;
+        this.client = client;
+        this.queryBuilder = queryBuilder;
+        this.users = users;
+        this.clauses = clauses;
+        this.fields = fields;
+        this.pageSize = pageSize;
+        this.maxIssues = maxIssues;
+    }
+
+    /**
+     * @param domain the name of the searched domain, which issues are stored under.
+     */
+    public ShardedPager setIssueStore(IssueStore issueStore, String domain) {
+        this.issueStore = issueStore;
+        this.domain = domain;
+        return this;
+    }
+
+    /**
+     * @param userLimit the issue limit of each user of a batched search, which stops the search and cancels the
+     *                  remaining windows once every user has reached it.
+     */
+    public ShardedPager setUserLimit(UserIssueLimit userLimit) {
+        this.userLimit = userLimit;
+        return this;
+    }
+
+    /**
+     * @param startDate      the date from which the windows are split, issues updated before it form the first window.
+     * @param endDate        the date until which the windows are split, issues updated after it form the last window.
+     * @param descending     true if the search orders issues by descending update time.
+     * @param shardSize      the maximum number of issues of a window before it is split, or zero to disable sharding.
+     * @param shardsInFlight the maximum number of windows which are retrieved concurrently.
+     */
+    public ShardedPager setSharding(LocalDate startDate, LocalDate endDate, boolean descending, int shardSize,
+                                    int shardsInFlight) {
+        this.rangeStart = toMinutes(startDate.atStartOfDay());
+        this.rangeEnd = toMinutes(endDate.atStartOfDay());
+        this.descending = descending;
+        this.shardSize = shardSize;
+        this.shardsInFlight = Math.max(1, shardsInFlight);
+        return this;
+    }
+
+    /**
+     * Submit the first request, either for the first page of the unsplit search or the probe of the whole range.
+     */
+    public ShardedPager start() {
+        if (shardSize <= 0 || rangeEnd <= rangeStart) {
+            shards = Collections.singletonList(newPager(queryBuilder.build(users, clauses), maxIssues).start());
+            started = 1;
+        } else {
+            probe(new Window(rangeStart, rangeEnd, true, true));
+        }
+        return this;
+    }
+
+    public boolean hasNextPage() {
+        if (shards == null)
+            return true;
+        advance();
+        return current < shards.size();
+    }
+
+    public List<IssueRecord> nextPage() throws JiraException, InterruptedException {
+        if (shards == null)
+            plan();
+        advance();
+        if (current >= shards.size())
+            return Collections.emptyList();
+
+        IssuePager pager = shards.get(current);
+        List<IssueRecord> issues = pager.nextPage();
+        // The number of issues of a window may have grown since it was probed
+        if (issuesFetched + issues.size() > maxIssues) {
+            issues = issues.subList(0, maxIssues - issuesFetched);
+            truncated = true;
+        }
+        issuesFetched += issues.size();
+        truncated |= pager.isTruncated();
+        if (userLimit != null && userLimit.isReached()) {
+            truncated |= current + 1 < shards.size();
+            cancelFrom(current + 1);
+        } else if (issuesFetched >= maxIssues) {
+            cancelFrom(current + 1);
+        }
+        return issues;
+    }
+
+    /**
+     * @return true if issues matching the search were not returned because the maximum number of issues was reached.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @return the number of windows the search has been split into, or zero if the windows have not been probed yet.
+     */
+    public int getShards() {
+        return shards == null ? 0 : shards.size();
+    }
+
+    /**
+     * Cancel any outstanding probes and prefetches, for example because the consumer of the pages has failed.
+     */
+    public void cancel() {
+        synchronized (probeLock) {
+            cancelled = true;
+            for (Future<?> probe : probes)
+                probe.cancel(true);
+        }
+        if (shards != null)
+            cancelFrom(current);
+    }
+
+    private void plan() throws JiraException, InterruptedException {
+        synchronized (probeLock) {
+            while (pendingProbes > 0 && probeFailure == null)
+                probeLock.wait();
+            if (probeFailure != null) {
+                cancel();
+                if (probeFailure instanceof JiraException)
+                    throw (JiraException) probeFailure;
+                throw new JiraException("Failed to count the issues of a window", probeFailure);
+            }
+            probes.clear();
+        }
+
+        Collections.sort(windows, new Comparator<Window>() {
+            @Override
+            public int compare(Window w1, Window w2) {
+                return Long.compare(w1.start, w2.start);
+            }
+        });
+        if (descending)
+            Collections.reverse(windows);
+        List<IssuePager> pagers = new ArrayList<>();
+        int remaining = maxIssues;
+        for (Window window : windows) {
+            if (window.total == 0)
+                continue;
+            if (remaining <= 0) {
+                truncated = true;
+                break;
+            }
+            pagers.add(newPager(queryBuilder.build(users, clauses + window.getClause()), remaining));
+            remaining -= window.total;
+        }
+        shards = pagers;
+    }
+
+    private void probe(final Window window) {
+        final String jql = queryBuilder.build(users, clauses + window.getClause());
+        synchronized (probeLock) {
+            if (cancelled)
+                return;
+            // The probe cannot complete before it is counted, as completing it requires the lock
+            probes.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        window.total = client.search(jql, COUNT_FIELD, 0, 0).total;
+                        split(window);
+                    } catch (JiraException | InterruptedException | RuntimeException e) {
+                        synchronized (probeLock) {
+                            if (probeFailure == null)
+                                probeFailure = e;
+                        }
+                    } finally {
+                        synchronized (probeLock) {
+                            pendingProbes--;
+                            probeLock.notifyAll();
+                        }
+                    }
+                }
+            }));
+            pendingProbes++;
+        }
+    }
+
+    private void split(Window window) {
+        long span = window.end - window.start;
+        if (window.total <= shardSize || span <= 1) {
+            synchronized (probeLock) {
+                windows.add(window);
+            }
+            return;
+        }
+
+        // Split into enough windows to fit the shard size if the issues were evenly spread, which saves rounds of
+        // probing compared to always halving a window
+        long parts = Math.min(span, Math.max(2, Math.min(MAX_SPLIT, (window.total + shardSize - 1) / shardSize)));
+        for (long i = 0; i < parts; i++) {
+            probe(new Window(window.start + span * i / parts, window.start + span * (i + 1) / parts,
+                    window.openStart && i == 0, window.openEnd && i == parts - 1));
+        }
+    }
+
+    private void advance() {
+        while (current < shards.size() && current < started && !shards.get(current).hasNextPage())
+            current++;
+        while (started < shards.size() && started < current + shardsInFlight)
+            shards.get(started++).start();
+    }
+
+    private void cancelFrom(int index) {
+        for (int i = index; i < started; i++)
+            shards.get(i).cancel();
+        shards = shards.subList(0, Math.min(index, shards.size()));
+        started = Math.min(started, shards.size());
+    }
+
+    private IssuePager newPager(String jql, int limit) {
+        return new IssuePager(executor, client, jql, fields, pageSize, limit).setIssueStore(issueStore, domain)
+                .setUserLimit(userLimit);
+    }
+
+    private static long toMinutes(LocalDateTime time) {
+        return TimeUnit.SECONDS.toMinutes(time.toEpochSecond(ZoneOffset.UTC));
+    }
+
+    private static String format(long minutes) {
+        return LocalDateTime.ofEpochSecond(TimeUnit.MINUTES.toSeconds(minutes), 0, ZoneOffset.UTC).format(JQL_FORMAT);
+    }
+
+    /**
+     * A range of update times, in minutes, which is unbounded below and/or above if it is the first or last window.
+     */
+    private class Window {
+        final long start;
+        final long end;
+        final boolean openStart;
+        final boolean openEnd;
+        volatile int total;
+
+        Window(long start, long end, boolean openStart, boolean openEnd) {
+            this.start = start;
+            this.end = end;
+            this.openStart = openStart;
+            this.openEnd = openEnd;
+        }
+
+        String getClause() {
+            return JqlQueryBuilder.updatedWithin(openStart ? null : format(start), openEnd ? null : format(end));
+        }
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A minimal in-process JIRA server, which allows the reporter to be tested and load tested without a network. The
+ * server either answers search requests with synthetic issues for the searched users, which can be scaled to any
+ * number of issues per user, or replays the responses of a fixture recorded by a {@link FixtureRecorder}.
+ * <p>
+ * Every response can be delayed by a fixed latency plus a random jitter, and errors can be injected either at a fixed
+ * interval or at random. The random jitter and errors are drawn from a fixed seed, so a single threaded run is
+ * reproducible.
+ *
+ * @author Ryan Emerson
+ */
+public class StubJiraServer implements AutoCloseable {
+
+    private static final Pattern USER_PATTERN = Pattern.compile("assignee = (\"(?:[^\"\\\\]|\\\\.)*\"|\\S+)");
+    private static final Pattern BATCH_PATTERN = Pattern.compile("assignee in \\(([^)]*)\\)");
+    private static final Pattern KEY_PATTERN = Pattern.compile("key in \\(([^)]*)\\)");
+    private static final Pattern FROM_PATTERN = Pattern.compile("updated >= '(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2})'");
+    private static final Pattern TO_PATTERN = Pattern.compile("updated < '(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2})'");
+    private static final DateTimeFormatter WINDOW_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final String project;
+    private final int issuesPerUser;
+    private final Map<String, List<FixtureRecorder.Response>> fixture;
+    private final Map<String, AtomicInteger> replayed = new ConcurrentHashMap<>();
+    private final Map<String, Integer> userIssues = new ConcurrentHashMap<>();
+    private volatile long latencyMillis;
+    private final Random random = new Random(0);
+    private long jitterMillis;
+    private int maxPageSize = 1000;
+    private int failEvery;
+    private double errorRate;
+    private int failureStatus;
+    private int retryAfterSeconds = -1;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile String lastQuery;
+    private volatile String lastFields;
+    private final AtomicInteger concurrentRequests = new AtomicInteger();
+    private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+
+    /**
+     * Create a server which answers each search with issuesPerUser synthetic issues for every searched user.
+     */
+    public StubJiraServer(String project, int issuesPerUser, long latencyMillis) throws IOException {
+        this(project, issuesPerUser, null, latencyMillis);
+    }
+
+    private StubJiraServer(String project, int issuesPerUser, Map<String, List<FixtureRecorder.Response>> fixture,
+                           long latencyMillis) throws IOException {
+        this.project = project;
+        this.issuesPerUser = issuesPerUser;
+        this.fixture = fixture;
+        this.latencyMillis = latencyMillis;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(executor);
+        server.createContext(fixture == null ? "/rest/api/" : "/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                search(exchange);
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * Create a server which replays the responses of a recorded fixture. The responses recorded for a request are
+     * replayed in the order in which they were received, after which the last response is repeated, whilst requests
+     * which were not recorded are answered with a 404.
+     */
+    public static StubJiraServer replay(Path fixtureFile, long latencyMillis) throws IOException {
+        return new StubJiraServer(null, 0, FixtureRecorder.read(fixtureFile), latencyMillis);
+    }
+
+    /**
+     * Override the number of synthetic issues of a user. Every user's most recent issue has the same position in the
+     * search results, so the additional issues of a user with more issues than the others are returned first.
+     */
+    public StubJiraServer setIssues(String user, int issues) {
+        userIssues.put(user, issues);
+        return this;
+    }
+
+    /**
+     * Caps the number of issues returned by a single search, as JIRA servers do regardless of the requested
+     * maxResults.
+     */
+    public StubJiraServer setMaxPageSize(int maxPageSize) {
+        this.maxPageSize = maxPageSize;
+        return this;
+    }
+
+    /**
+     * Respond to every nth request with the specified error status, or to every request if n is 1.
+     *
+     * @param retryAfterSeconds the value of the Retry-After header sent with each error, or -1 for no header.
+     */
+    public StubJiraServer setFailures(int n, int status, int retryAfterSeconds) {
+        this.failEvery = n;
+        this.failureStatus = status;
+        this.retryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    /**
+     * Respond to a random fraction of the requests with the specified error status.
+     *
+     * @param retryAfterSeconds the value of the Retry-After header sent with each error, or -1 for no header.
+     */
+    public StubJiraServer setErrorRate(double errorRate, int status, int retryAfterSeconds) {
+        this.errorRate = errorRate;
+        this.failureStatus = status;
+        this.retryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    /**
+     * @param latencyMillis the delay before each response.
+     */
+    public StubJiraServer setLatency(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+        return this;
+    }
+
+    /**
+     * @param jitterMillis the maximum random delay which is added to the latency of each response.
+     */
+    public StubJiraServer setJitter(long jitterMillis) {
+        this.jitterMillis = jitterMillis;
+        return this;
+    }
+
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public String getLastQuery() {
+        return lastQuery;
+    }
+
+    public String getLastFields() {
+        return lastFields;
+    }
+
+    public int getRequests() {
+        return requests.get();
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        // The idle handler threads would otherwise keep the JVM alive until they expire
+        executor.shutdownNow();
+    }
+
+    private void search(HttpExchange exchange) throws IOException {
+        // Health probes are delayed like any other request, but are neither counted nor failed
+        if (exchange.getRequestURI().getRawPath().endsWith("/serverInfo")) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            respond(exchange, 200, "{\"serverTitle\":\"" + project + "\"}");
+            return;
+        }
+        int request = requests.incrementAndGet();
+        int concurrent = concurrentRequests.incrementAndGet();
+        for (int max = maxConcurrentRequests.get(); concurrent > max; max = maxConcurrentRequests.get())
+            maxConcurrentRequests.compareAndSet(max, concurrent);
+        try {
+            boolean fail;
+            long jitter;
+            synchronized (random) {
+                fail = errorRate > 0 && random.nextDouble() < errorRate;
+                jitter = jitterMillis > 0 ? (long) (random.nextDouble() * (jitterMillis + 1)) : 0;
+            }
+            Thread.sleep(latencyMillis + jitter);
+            if (fail || failEvery > 0 && request % failEvery == 0) {
+                if (retryAfterSeconds >= 0)
+                    exchange.getResponseHeaders().add("Retry-After", String.valueOf(retryAfterSeconds));
+                respond(exchange, failureStatus, "{\"errorMessages\":[\"Injected failure\"]}");
+                return;
+            }
+            if (fixture != null) {
+                replay(exchange);
+                return;
+            }
+            Map<String, String> params = getParams(exchange.getRequestURI().getRawQuery());
+            String jql = params.get("jql");
+            lastQuery = jql;
+            lastFields = params.get("fields");
+            boolean comments = lastFields != null && lastFields.contains("comment");
+            Matcher keys = KEY_PATTERN.matcher(jql);
+            if (keys.find()) {
+                respond(exchange, 200, getIssuesByKey(keys.group(1).split(","), comments));
+                return;
+            }
+            String[] users = getUsers(jql);
+            List<Integer> matches = getMatches(jql, users);
+            int total = matches.size();
+            int startAt = params.containsKey("startAt") ? Integer.parseInt(params.get("startAt")) : 0;
+            int maxResults = params.containsKey("maxResults") ? Integer.parseInt(params.get("maxResults")) : 50;
+            maxResults = Math.min(maxResults, maxPageSize);
+            int end = Math.min(total, startAt + maxResults);
+
+            StringBuilder sb = new StringBuilder();
+            sb.append("{\"startAt\":").append(startAt).append(",\"maxResults\":").append(maxResults)
+                    .append(",\"total\":").append(total).append(",\"issues\":[");
+            for (int i = startAt; i < end; i++) {
+                if (i > startAt)
+                    sb.append(',');
+                int n = matches.get(i);
+                appendIssue(sb, users[n % users.length], n / users.length, comments);
+            }
+            sb.append("]}");
+            respond(exchange, 200, sb.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            concurrentRequests.decrementAndGet();
+        }
+    }
+
+    private void replay(HttpExchange exchange) throws IOException {
+        String uri = exchange.getRequestURI().getRawPath();
+        if (exchange.getRequestURI().getRawQuery() != null)
+            uri += "?" + exchange.getRequestURI().getRawQuery();
+        Map<String, String> params = getParams(exchange.getRequestURI().getRawQuery());
+        lastQuery = params.get("jql");
+        lastFields = params.get("fields");
+
+        List<FixtureRecorder.Response> responses = fixture.get(uri);
+        if (responses == null) {
+            respond(exchange, 404, "{\"errorMessages\":[\"No recorded response\"]}");
+            return;
+        }
+        AtomicInteger count = replayed.get(uri);
+        if (count == null) {
+            replayed.putIfAbsent(uri, new AtomicInteger());
+            count = replayed.get(uri);
+        }
+        FixtureRecorder.Response response = responses.get(Math.min(count.getAndIncrement(), responses.size() - 1));
+        if (response.retryAfterSeconds >= 0)
+            exchange.getResponseHeaders().add("Retry-After", String.valueOf(response.retryAfterSeconds));
+        respond(exchange, response.status, response.body);
+    }
+
+    private String getIssuesByKey(String[] keys, boolean comments) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"startAt\":0,\"maxResults\":").append(keys.length).append(",\"total\":").append(keys.length)
+                .append(",\"issues\":[");
+        for (int i = 0; i < keys.length; i++) {
+            // Keys are of the form PROJECT-user-index
+            String[] parts = keys[i].split("-");
+            if (i > 0)
+                sb.append(',');
+            appendIssue(sb, parts[1], Integer.parseInt(parts[2]), comments);
+        }
+        return sb.append("]}").toString();
+    }
+
+    /**
+     * Interleave the users' issues, as a real batched search would order them by update time, and filter them by
+     * any window of update times. As an issue's updated minute is its index modulo 60, the issues are only ordered
+     * by update time when there are at most 60 issues per user.
+     */
+    private List<Integer> getMatches(String jql, String[] users) {
+        Matcher from = FROM_PATTERN.matcher(jql);
+        Matcher to = TO_PATTERN.matcher(jql);
+        LocalDateTime start = from.find() ? LocalDateTime.parse(from.group(1), WINDOW_FORMAT) : LocalDateTime.MIN;
+        LocalDateTime end = to.find() ? LocalDateTime.parse(to.group(1), WINDOW_FORMAT) : LocalDateTime.MAX;
+        final int[] counts = new int[users.length];
+        int maxCount = 0;
+        for (int i = 0; i < users.length; i++) {
+            Integer count = userIssues.get(users[i]);
+            counts[i] = count == null ? issuesPerUser : count;
+            maxCount = Math.max(maxCount, counts[i]);
+        }
+
+        // The n'th match is the issue n / users of the user n % users
+        final int numberOfUsers = users.length;
+        List<Integer> matches = new ArrayList<>();
+        for (int n = 0; n < numberOfUsers * maxCount; n++) {
+            LocalDateTime updated = getUpdated(n / numberOfUsers);
+            if (n / numberOfUsers < counts[n % numberOfUsers] && !updated.isBefore(start) && updated.isBefore(end))
+                matches.add(n);
+        }
+        if (!userIssues.isEmpty()) {
+            // Align the most recent issue of every user
+            Collections.sort(matches, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    int order = Integer.compare(a / numberOfUsers - counts[a % numberOfUsers],
+                            b / numberOfUsers - counts[b % numberOfUsers]);
+                    return order != 0 ? order : Integer.compare(a % numberOfUsers, b % numberOfUsers);
+                }
+            });
+        }
+        if (jql.contains("ORDER BY updated DESC"))
+            Collections.reverse(matches);
+        return matches;
+    }
+
+    private static LocalDateTime getUpdated(int index) {
+        return LocalDateTime.of(2015, 6, 1, 10, index % 60);
+    }
+
+    private static String[] getUsers(String jql) {
+        Matcher matcher = BATCH_PATTERN.matcher(jql);
+        if (matcher.find())
+            return unquote(matcher.group(1).split(","));
+        matcher = USER_PATTERN.matcher(jql);
+        return unquote(new String[] {matcher.find() ? matcher.group(1) : "unknown"});
+    }
+
+    /**
+     * Reverse the quoting of user names which are not plain words, which must not contain commas or parentheses.
+     */
+    private static String[] unquote(String[] users) {
+        for (int i = 0; i < users.length; i++) {
+            if (users[i].startsWith("\""))
+                users[i] = users[i].substring(1, users[i].length() - 1).replaceAll("\\\\(.)", "$1");
+        }
+        return users;
+    }
+
+    /**
+     * @param comments true if the issue's comments should be included, of which the user wrote index % 3 and a
+     *                 reviewer wrote one.
+     */
+    private void appendIssue(StringBuilder sb, String user, int index, boolean comments) {
+        sb.append("{\"id\":\"").append(index).append("\",\"key\":\"").append(project).append('-').append(user)
+                .append('-').append(index).append("\",\"fields\":{")
+                .append("\"summary\":\"Issue ").append(index).append(" of ").append(user).append("\",")
+                .append("\"project\":{\"key\":\"").append(project)
+                .append("\",\"name\":\"").append(project).append("\"},")
+                .append("\"status\":{\"name\":\"Open\"},")
+                .append("\"created\":\"2015-06-01T10:00:00.000+0000\",")
+                .append("\"updated\":\"").append(getUpdated(index)).append(":00.000+0000\",")
+                .append("\"reporter\":{\"name\":\"").append(user).append("\"},")
+                .append("\"assignee\":{\"name\":\"").append(user).append("\"}");
+        if (comments) {
+            sb.append(",\"comment\":{\"comments\":[");
+            for (int i = 0; i < index % 3; i++)
+                appendComment(sb, user, i);
+            appendComment(sb, "reviewer", index % 3);
+            sb.setLength(sb.length() - 1);
+            sb.append("]}");
+        }
+        sb.append("}}");
+    }
+
+    private static void appendComment(StringBuilder sb, String author, int id) {
+        sb.append("{\"id\":\"").append(id).append("\",\"body\":\"Comment ").append(id).append("\",")
+                .append("\"author\":{\"name\":\"").append(author).append("\"}},");
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        respond(exchange, status, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] bytes) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> getParams(String query) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        if (query == null)
+            return params;
+        for (String pair : query.split("&")) {
+            int idx = pair.indexOf('=');
+            if (idx > 0)
+                params.put(pair.substring(0, idx), URLDecoder.decode(pair.substring(idx + 1), "UTF-8"));
+        }
+        return params;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts the issues of each user of a batched search as its pages are returned, so that the search can stop
+ * requesting pages once every user has reached the issue limit, even though the batch as a whole matches more issues.
+ * Only the pagers of a single search use a limit, and only from the thread consuming their pages.
+ *
+ * @author Ryan Emerson
+ */
+public class UserIssueLimit {
+
+    // The number of issues still required by each user who has not yet reached the limit
+    private final Map<String, Integer> remaining = new LinkedHashMap<>();
+
+    /**
+     * @param users the users whose issues are counted.
+     * @param limit the maximum number of issues written for each user.
+     */
+    public UserIssueLimit(Collection<String> users, int limit) {
+        for (String user : users) {
+            if (limit > 0)
+                remaining.put(user, limit);
+        }
+    }
+
+    /**
+     * Count each issue towards every user it is associated with.
+     */
+    public void count(List<IssueRecord> issues) {
+        for (IssueRecord issue : issues) {
+            Iterator<Map.Entry<String, Integer>> it = remaining.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Integer> entry = it.next();
+                if (!issue.isAssociatedWith(entry.getKey()))
+                    continue;
+                if (entry.getValue() > 1)
+                    entry.setValue(entry.getValue() - 1);
+                else
+                    it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return true if every user has reached the limit, so no further issues would be written.
+     */
+    public boolean isReached() {
+        return remaining.isEmpty();
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streams the usernames of a user file, so that searching starts as soon as the first username has been read and the
+ * roster is never held in memory. Blank lines and lines starting with '#' are skipped, as are lines containing more
+ * than one word, which are reported. The file may be gzip compressed.
+ * <p>
+ * JIRA usernames are case insensitive, so each username is only returned the first time it is read regardless of its
+ * case. Rather than retaining every username, only a 64 bit hash of each is kept in an open addressing set, 8 bytes
+ * per user. Two distinct usernames only share a hash with a negligible probability, even for rosters of millions of
+ * users, whereas a Bloom filter of a comparable size would wrongly skip a small fraction of users.
+ * <p>
+ * Every iteration reads the file again.
+ *
+ * @author Ryan Emerson
+ */
+public class UserRoster implements Iterable<String> {
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private final Path file;
+
+    public UserRoster(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @throws UncheckedIOException if the file cannot be read.
+     */
+    @Override
+    public Iterator<String> iterator() {
+        try {
+            return new RosterIterator(open(file));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static BufferedReader open(Path file) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(file), 64 * 1024);
+        in.mark(2);
+        int magic = in.read() | in.read() << 8;
+        in.reset();
+        if (magic == GZIP_MAGIC)
+            in = new GZIPInputStream(in, 64 * 1024);
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    private class RosterIterator implements Iterator<String> {
+        final BufferedReader reader;
+        final FingerprintSet seen = new FingerprintSet();
+        int lineNumber;
+        int duplicates;
+        String next;
+        boolean closed;
+
+        RosterIterator(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !closed)
+                next = readUser();
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            String user = next;
+            next = null;
+            return user;
+        }
+
+        private String readUser() {
+            try {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    lineNumber++;
+                    String user = line.trim();
+                    if (user.isEmpty() || user.startsWith("#"))
+                        continue;
+                    if (hasWhitespace(user)) {
+                        System.err.println("Skipping line " + lineNumber + " of " + file +
+                                           ", which contains more than one username: " + user);
+                        continue;
+                    }
+                    if (seen.add(ShardPlan.hash(user.toLowerCase())))
+                        return user;
+                    duplicates++;
+                }
+                closed = true;
+                reader.close();
+                if (duplicates > 0)
+                    System.out.println("Skipped " + duplicates + " duplicate usernames of " + file);
+                return null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private boolean hasWhitespace(String user) {
+            for (int i = 0; i < user.length(); i++)
+                if (Character.isWhitespace(user.charAt(i)))
+                    return true;
+            return false;
+        }
+    }
+
+    /**
+     * A set of 64 bit hashes with linear probing, where zero marks an empty slot and is therefore remapped.
+     */
+    private static class FingerprintSet {
+        long[] slots = new long[1024];
+        int size;
+
+        boolean add(long hash) {
+            if (hash == 0)
+                hash = 1;
+            int slot = find(slots, hash);
+            if (slots[slot] == hash)
+                return false;
+            slots[slot] = hash;
+            if (++size > slots.length / 2) {
+                long[] resized = new long[slots.length * 2];
+                for (long existing : slots)
+                    if (existing != 0)
+                        resized[find(resized, existing)] = existing;
+                slots = resized;
+            }
+            return true;
+        }
+
+        private static int find(long[] slots, long hash) {
+            int mask = slots.length - 1;
+            int slot = (int) (hash ^ hash >>> 32) & mask;
+            while (slots[slot] != 0 && slots[slot] != hash)
+                slot = (slot + 1) & mask;
+            return slot;
+        }
+    }
+}
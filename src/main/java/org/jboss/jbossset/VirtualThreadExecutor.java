@@ -0,0 +1,218 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An executor which runs every task on its own newly started virtual thread, with the number of tasks executing
+ * concurrently bounded by a semaphore rather than by the size of a pool. Tasks which are waiting for a permit only
+ * occupy a parked virtual thread, so many thousands of user/domain searches can be submitted at once without
+ * dedicating a platform thread to each of them.
+ * <p>
+ * Virtual threads are created reflectively so that the reporter can still be built for and run on older JDKs, on
+ * which a daemon platform thread is started for each task instead. See {@link #isVirtual()}.
+ *
+ * @author Ryan Emerson
+ */
+public class VirtualThreadExecutor extends AbstractExecutorService {
+
+    private static final Method OF_VIRTUAL = getMethod(Thread.class, "ofVirtual");
+    private static final Method BUILDER_NAME = getMethod(getClass("java.lang.Thread$Builder"), "name", String.class,
+            long.class);
+    private static final Method BUILDER_FACTORY = getMethod(getClass("java.lang.Thread$Builder"), "factory");
+
+    private final Semaphore permits;
+    private final ThreadFactory threadFactory;
+    private final Set<Thread> threads = new HashSet<>();
+    private boolean shutdown;
+    private volatile boolean stopped;
+
+    /**
+     * @param name        the prefix of the name of each thread, which is followed by a sequence number.
+     * @param concurrency the maximum number of tasks which are executed concurrently.
+     */
+    public VirtualThreadExecutor(String name, int concurrency) {
+        this.permits = new Semaphore(concurrency, true);
+        ThreadFactory factory = newVirtualThreadFactory(name + "-");
+        this.threadFactory = factory != null ? factory : newPlatformThreadFactory(name + "-");
+    }
+
+    /**
+     * @return true if the JVM supports virtual threads, otherwise tasks are executed on platform threads.
+     */
+    public static boolean isVirtual() {
+        return OF_VIRTUAL != null && BUILDER_NAME != null && BUILDER_FACTORY != null;
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        Thread thread = threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runWithPermit(command);
+                } finally {
+                    synchronized (threads) {
+                        threads.remove(Thread.currentThread());
+                        threads.notifyAll();
+                    }
+                }
+            }
+        });
+        synchronized (threads) {
+            if (shutdown)
+                throw new RejectedExecutionException("Executor has been shutdown");
+            threads.add(thread);
+        }
+        thread.start();
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (threads) {
+            shutdown = true;
+        }
+    }
+
+    /**
+     * Interrupts every executing task and cancels the tasks which are still waiting for a permit. As tasks are
+     * never queued, the returned list is always empty.
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        synchronized (threads) {
+            shutdown = true;
+            stopped = true;
+            for (Thread thread : threads)
+                thread.interrupt();
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        synchronized (threads) {
+            return shutdown;
+        }
+    }
+
+    @Override
+    public boolean isTerminated() {
+        synchronized (threads) {
+            return shutdown && threads.isEmpty();
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (threads) {
+            while (!shutdown || !threads.isEmpty()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    return false;
+                TimeUnit.NANOSECONDS.timedWait(threads, remaining);
+            }
+            return true;
+        }
+    }
+
+    private void runWithPermit(Runnable command) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            cancel(command);
+            return;
+        }
+        try {
+            // The permit of an interrupted task may be acquired before this thread has been interrupted
+            if (stopped) {
+                cancel(command);
+                return;
+            }
+            command.run();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static void cancel(Runnable command) {
+        // The task never started, so its future must be completed or anyone waiting on it would block forever
+        if (command instanceof Future)
+            ((Future<?>) command).cancel(false);
+    }
+
+    private static ThreadFactory newVirtualThreadFactory(String prefix) {
+        if (!isVirtual())
+            return null;
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = BUILDER_NAME.invoke(builder, prefix, 0L);
+            return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            System.err.println("Unable to create virtual threads, platform threads will be used instead: " + e);
+            return null;
+        }
+    }
+
+    private static ThreadFactory newPlatformThreadFactory(final String prefix) {
+        return new ThreadFactory() {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, prefix + count++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private static Class<?> getClass(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static Method getMethod(Class<?> type, String name, Class<?>... parameterTypes) {
+        if (type == null)
+            return null;
+        try {
+            return type.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Properties;
+
+/**
+ * The directory shared by the coordinator and workers of a distributed run, through which they communicate with small
+ * files that are always replaced atomically, so that no process ever reads a partially written file:
+ * <pre>
+ * assignment              the worker of each shard, written by the coordinator
+ * shard-n.manifest        written by a worker once every user of shard n has been searched
+ * worker-n.heartbeat      a counter which worker n increments while it is alive
+ * run.manifest            the merged manifests, written by the coordinator once every shard is complete
+ * </pre>
+ *
+ * @author Ryan Emerson
+ */
+public class WorkDirectory {
+
+    static final String ASSIGNMENT = "assignment";
+    static final String RUN_MANIFEST = "run.manifest";
+
+    private final Path directory;
+
+    public WorkDirectory(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    public Path getPath() {
+        return directory;
+    }
+
+    /**
+     * @return the worker of each shard, or the initial assignment of the plan if the coordinator has not written one.
+     */
+    public int[] readAssignment(ShardPlan plan) throws IOException {
+        int[] workers = new int[plan.getShardCount()];
+        Properties assignment = read(ASSIGNMENT);
+        for (int shard = 0; shard < workers.length; shard++) {
+            String worker = assignment == null ? null : assignment.getProperty(String.valueOf(shard));
+            workers[shard] = worker == null ? plan.getWorker(shard) : Integer.parseInt(worker);
+        }
+        return workers;
+    }
+
+    public void writeAssignment(int[] workers) throws IOException {
+        Properties assignment = new Properties();
+        for (int shard = 0; shard < workers.length; shard++)
+            assignment.setProperty(String.valueOf(shard), String.valueOf(workers[shard]));
+        write(ASSIGNMENT, assignment);
+    }
+
+    /**
+     * @return the manifest of the shard, or null if the shard has not been completed.
+     */
+    public Properties readManifest(int shard) throws IOException {
+        return read(getManifestName(shard));
+    }
+
+    public void writeManifest(int shard, int worker, int users, int failures) throws IOException {
+        Properties manifest = new Properties();
+        manifest.setProperty("worker", String.valueOf(worker));
+        manifest.setProperty("users", String.valueOf(users));
+        manifest.setProperty("failures", String.valueOf(failures));
+        manifest.setProperty("completed", Instant.now().toString());
+        write(getManifestName(shard), manifest);
+    }
+
+    /**
+     * @return the heartbeat counter of the worker, or -1 if the worker has never sent a heartbeat.
+     */
+    public long readHeartbeat(int worker) throws IOException {
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(directory.resolve(getHeartbeatName(worker))),
+                    StandardCharsets.UTF_8).trim());
+        } catch (NoSuchFileException e) {
+            return -1;
+        }
+    }
+
+    public void writeHeartbeat(int worker, long counter) throws IOException {
+        Path tmpFile = directory.resolve(getHeartbeatName(worker) + ".tmp");
+        Files.write(tmpFile, String.valueOf(counter).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmpFile, directory.resolve(getHeartbeatName(worker)), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public boolean isComplete() {
+        return Files.exists(directory.resolve(RUN_MANIFEST));
+    }
+
+    public void writeRunManifest(Properties manifest) throws IOException {
+        write(RUN_MANIFEST, manifest);
+    }
+
+    private static String getManifestName(int shard) {
+        return "shard-" + shard + ".manifest";
+    }
+
+    private static String getHeartbeatName(int worker) {
+        return "worker-" + worker + ".heartbeat";
+    }
+
+    private Properties read(String name) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(directory.resolve(name), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        return properties;
+    }
+
+    private void write(String name, Properties properties) throws IOException {
+        // Each process writes to its own temporary file, as two processes may briefly write the same manifest
+        Path tmpFile = Files.createTempFile(directory, name, ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+        Files.move(tmpFile, directory.resolve(name), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A pool of writer threads which perform the output of a run, so that disk latency overlaps with the network
+ * requests rather than adding to them. Each writer thread drains its own bounded queue of tasks in order, and all of
+ * the tasks of a key, such as a user's output file, are always executed by the same thread, so the output of each
+ * key is identical to writing it synchronously. When a queue is full the submitting thread blocks, which in turn
+ * stops the searches from being consumed and throttles the fetching of further pages.
+ * <p>
+ * A stage with no writer threads executes every task on the submitting thread.
+ *
+ * @author Ryan Emerson
+ */
+public class WriterStage implements AutoCloseable {
+
+    private static final Runnable SHUTDOWN = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private static final Lane INLINE = new Lane();
+
+    private final Lane[] lanes;
+
+    /**
+     * @param threads       the number of writer threads, or zero if tasks should be executed on the submitting thread.
+     * @param queueCapacity the maximum number of tasks queued for each writer thread.
+     */
+    public WriterStage(int threads, int queueCapacity) {
+        lanes = new Lane[threads];
+        for (int i = 0; i < threads; i++)
+            lanes[i] = new Lane("writer-" + i, queueCapacity);
+    }
+
+    /**
+     * @return the lane which executes all of the tasks of the specified key.
+     */
+    public Lane getLane(String key) {
+        return lanes.length == 0 ? INLINE : lanes[(key.hashCode() & Integer.MAX_VALUE) % lanes.length];
+    }
+
+    /**
+     * Wait for every submitted task to be executed and stop the writer threads.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        for (Lane lane : lanes)
+            lane.queue.put(SHUTDOWN);
+        for (Lane lane : lanes)
+            lane.thread.join();
+    }
+
+    /**
+     * A single writer thread and its queue of tasks.
+     */
+    public static class Lane {
+        private final BlockingQueue<Runnable> queue;
+        private final Thread thread;
+
+        private Lane() {
+            this.queue = null;
+            this.thread = null;
+        }
+
+        private Lane(String name, int queueCapacity) {
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            }, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Queue a task, blocking whilst the lane's queue is full.
+         */
+        public void submit(Runnable task) throws InterruptedException {
+            if (queue == null)
+                task.run();
+            else
+                queue.put(task);
+        }
+
+        private void drain() {
+            try {
+                for (Runnable task = queue.take(); task != SHUTDOWN; task = queue.take()) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        System.err.println("Unexpected error in writer thread " + thread.getName() + ": " + e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
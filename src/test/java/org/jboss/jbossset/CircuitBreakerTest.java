@@ -0,0 +1,68 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ryan Emerson
+ */
+public class CircuitBreakerTest {
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 60000);
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertTrue(breaker.allowRequest());
+        breaker.onFailure();
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void testSingleTrialRequestOnceOpenPeriodElapsed() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, 50);
+        breaker.trip();
+        assertFalse(breaker.allowRequest());
+        Thread.sleep(100);
+
+        // Only one request is permitted whilst the trial is in flight, and its failure opens the breaker again
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        breaker.onFailure();
+        assertTrue(breaker.isOpen());
+        Thread.sleep(100);
+
+        assertTrue(breaker.allowRequest());
+        breaker.onSuccess();
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.allowRequest());
+        assertTrue(breaker.allowRequest());
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ryan Emerson
+ */
+public class ColumnarExporterTest {
+
+    @Test
+    public void testRowsReadBack() throws Exception {
+        // Spans two row groups, with null and non-ASCII values and timestamps that decrease as well as increase
+        List<IssueRecord> issues = new ArrayList<>();
+        int numberOfIssues = ColumnarExporter.ROW_GROUP_SIZE + 100;
+        for (int i = 0; i < numberOfIssues; i++) {
+            String reporter = "user" + i % 7;
+            String assignee = i % 5 == 0 ? null : "user" + i % 3;
+            issues.add(new IssueRecord("JBOSS-" + i, "PROJECT" + i % 4, i % 11 == 0 ? null : "Summary é " + i,
+                    i % 2 == 0 ? "Open" : "Resolved", reporter, assignee, 1433152800000L - i * 1000L,
+                    1433152800000L + (i % 13) * 60000L));
+        }
+
+        Path file = Files.createTempFile("issues", ".jrc");
+        try {
+            try (ColumnarExporter exporter = new ColumnarExporter(file)) {
+                for (IssueRecord issue : issues) {
+                    String domain = Integer.parseInt(issue.getKey().substring(6)) % 2 == 0 ? "JBOSS" : "APACHE";
+                    exporter.append("user1", domain, issue);
+                }
+            }
+
+            ColumnarReader reader = new ColumnarReader(file);
+            assertEquals(numberOfIssues, reader.getRows());
+            assertEquals(Arrays.asList(ColumnarExporter.COLUMNS), reader.getColumns());
+            assertEquals(Arrays.asList("Open", "Resolved"), reader.getDictionary("status"));
+
+            List<ColumnarReader.Row> rows = reader.readRows();
+            assertEquals(numberOfIssues, rows.size());
+            for (int i = 0; i < numberOfIssues; i++) {
+                IssueRecord expected = issues.get(i);
+                ColumnarReader.Row row = rows.get(i);
+                assertEquals("user1", row.getUser());
+                assertEquals(i % 2 == 0 ? "JBOSS" : "APACHE", row.getDomain());
+                assertEquals(ColumnarExporter.getRole("user1", expected), row.getRole());
+                assertEquals(expected.getKey(), row.getIssue().getKey());
+                assertEquals(expected.getProject(), row.getIssue().getProject());
+                assertEquals(expected.getSummary(), row.getIssue().getSummary());
+                assertEquals(expected.getStatus(), row.getIssue().getStatus());
+                assertEquals(expected.getReporter(), row.getIssue().getReporter());
+                assertEquals(expected.getAssignee(), row.getIssue().getAssignee());
+                assertEquals(expected.getCreated(), row.getIssue().getCreated());
+                assertEquals(expected.getUpdated(), row.getIssue().getUpdated());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testRoles() {
+        IssueRecord issue = new IssueRecord("JBOSS-1", "JBOSS", "Summary", "Open", "User0", "user1", 0, 0);
+        assertEquals("reporter", ColumnarExporter.getRole("user0", issue));
+        assertEquals("assignee", ColumnarExporter.getRole("user1", issue));
+        assertEquals(null, ColumnarExporter.getRole("user2", issue));
+        issue = new IssueRecord("JBOSS-1", "JBOSS", "Summary", "Open", "user0", "user0", 0, 0);
+        assertEquals("both", ColumnarExporter.getRole("user0", issue));
+    }
+
+    @Test
+    public void testSmallerThanCsv() throws Exception {
+        ByteArrayOutputStream columnar = new ByteArrayOutputStream();
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        try (ColumnarExporter exporter = new ColumnarExporter(columnar)) {
+            for (int i = 0; i < 1000; i++) {
+                IssueRecord issue = new IssueRecord("JBOSS-" + i, "JBOSS", "Issue " + i, "Open", "user" + i % 10,
+                        "user" + i % 10, 1433152800000L, 1433152800000L + i * 1000L);
+                exporter.append("user" + i % 10, "JBOSS", issue);
+                csv.write(("JBOSS-" + i + ",JBOSS,Issue " + i + ",Open,user" + i % 10 + ",user" + i % 10 + "\r\n")
+                        .getBytes("UTF-8"));
+            }
+        }
+        assertTrue(columnar.size() + " >= " + csv.size(), columnar.size() < csv.size());
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.QuoteMode;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the output of {@link CsvRecordWriter} with golden files produced by {@link CSVPrinter}.
+ *
+ * @author Ryan Emerson
+ */
+public class CsvRecordWriterTest {
+
+    private static final List<IssueRecord> RECORDS = Arrays.asList(
+            new IssueRecord("JBOSS-1", "JBOSS", "A plain summary", "Open", "user0", "user1", 0, 0),
+            new IssueRecord("JBOSS-2", "JBOSS", "Summary, with a comma", "Resolved", "user0", null, 0, 0),
+            new IssueRecord("JBOSS-3", "JBOSS", "Summary with \"quotes\" and a\ttab", "Closed", "user0", "", 0, 0),
+            new IssueRecord("JBOSS-4", "JBOSS", "Multi\r\nline\nsummary", "Open", "user0", "user1", 0, 0),
+            new IssueRecord("#JBOSS-5", "JBOSS", " leading and trailing spaces ", "Open", "user0", "user1", 0, 0),
+            new IssueRecord("JBOSS-6", "JBOSS", "Back\\slash and élève – unicode", "Open", "", "user1", 0, 0),
+            new IssueRecord("", "JBOSS", "", "Open", null, "user1", 0, 0),
+            new IssueRecord("7", "JBOSS", "123", "Open", "user0", "user1", 0, 0));
+
+    @Test
+    public void testGoldenFiles() throws Exception {
+        Map<String, CSVFormat> formats = new CommandLineParser(new String[0]).getValidCSVFormats();
+        for (Map.Entry<String, CSVFormat> format : formats.entrySet()) {
+            String golden = readGoldenFile(format.getKey());
+            assertEquals(format.getKey(), golden, printWithCSVPrinter(format.getValue()));
+            assertEquals(format.getKey(), golden, printWithRecordWriter(format.getValue()));
+        }
+    }
+
+    @Test
+    public void testOtherFormatsMatchCSVPrinter() throws Exception {
+        CSVFormat[] formats = {
+                CSVFormat.DEFAULT.withQuoteMode(QuoteMode.ALL),
+                CSVFormat.DEFAULT.withQuoteMode(QuoteMode.NON_NUMERIC),
+                CSVFormat.DEFAULT.withEscape('\\').withQuoteMode(QuoteMode.NONE),
+                CSVFormat.DEFAULT.withQuote('\'').withDelimiter(';').withNullString("NULL"),
+                CSVFormat.DEFAULT.withQuote(null).withDelimiter('¦').withRecordSeparator("\n")
+        };
+        for (CSVFormat format : formats)
+            assertEquals(format.toString(), printWithCSVPrinter(format), printWithRecordWriter(format));
+    }
+
+    private static String printWithCSVPrinter(CSVFormat format) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (CSVPrinter printer = new CSVPrinter(writer, format)) {
+            printer.printRecord("JBOSS Issues");
+            printer.printRecord(IssueProcessor.CSV_HEADERS);
+            for (IssueRecord record : RECORDS)
+                printer.printRecord(new IssueProcessor("user0", record).getPrintableRecord());
+            printer.println();
+        }
+        return writer.toString();
+    }
+
+    private static String printWithRecordWriter(CSVFormat format) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (CsvRecordWriter printer = new CsvRecordWriter(writer, format)) {
+            printer.printRecord("JBOSS Issues");
+            printer.printRecord(IssueProcessor.CSV_HEADERS);
+            for (IssueRecord record : RECORDS)
+                IssueProcessor.printRecord(record, printer);
+            printer.println();
+        }
+        return writer.toString();
+    }
+
+    private static String readGoldenFile(String format) throws IOException {
+        try (InputStream in = CsvRecordWriterTest.class.getResourceAsStream("/golden/" + format + ".csv");
+             Scanner scanner = new Scanner(in, StandardCharsets.UTF_8.name())) {
+            return scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "";
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Ryan Emerson
+ */
+public class FixtureRecorderTest {
+
+    private static final List<String> USERS = Arrays.asList("user0", "user1", "user2");
+
+    private StubJiraServer jboss;
+    private Path dir;
+
+    @Before
+    public void init() throws Exception {
+        jboss = new StubJiraServer("JBOSS", 7, 0).setMaxPageSize(5);
+        dir = Files.createTempDirectory("jira-reporter");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        jboss.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testRecordedRunReplayed() throws Exception {
+        Path domainFile = dir.resolve("domains.properties");
+        Files.write(domainFile, Arrays.asList("JBOSS=" + jboss.getUrl()));
+        Path fixtures = dir.resolve("fixtures");
+
+        run(domainFile, dir.resolve("recorded"), "--record", fixtures.toString());
+        int requests = jboss.getRequests();
+        assertEquals(Arrays.asList(FixtureRecorder.getFileName(jboss.getUrl())), list(fixtures));
+
+        // The replayed run never reaches the recorded domain, but produces the same files
+        run(domainFile, dir.resolve("replayed"), "--replay", fixtures.toString(), "--stubLatency", "1");
+        assertEquals(requests, jboss.getRequests());
+        for (String user : USERS) {
+            List<String> recorded = Files.readAllLines(dir.resolve("recorded").resolve(user + ".csv"));
+            assertEquals(2 + 7 + 1, recorded.size());
+            assertEquals(recorded, Files.readAllLines(dir.resolve("replayed").resolve(user + ".csv")));
+        }
+    }
+
+    @Test
+    public void testTruncatedFixtureRead() throws Exception {
+        Path fixtures = dir.resolve("fixtures");
+        try (FixtureRecorder recorder = new FixtureRecorder(fixtures)) {
+            recorder.record(jboss.getUrl(), "/search?a=1", 503, 5, new byte[0]);
+            recorder.record(jboss.getUrl(), "/search?a=1", 200, -1, "first".getBytes(StandardCharsets.UTF_8));
+            recorder.record(jboss.getUrl(), "/search?a=2", 200, -1, "second".getBytes(StandardCharsets.UTF_8));
+        }
+        Path file = fixtures.resolve(FixtureRecorder.getFileName(jboss.getUrl()));
+        Map<String, List<FixtureRecorder.Response>> responses = FixtureRecorder.read(file);
+        assertEquals(2, responses.size());
+        assertEquals(503, responses.get("/search?a=1").get(0).status);
+        assertEquals(5, responses.get("/search?a=1").get(0).retryAfterSeconds);
+        assertArrayEquals("first".getBytes(StandardCharsets.UTF_8), responses.get("/search?a=1").get(1).body);
+
+        // Without the gzip trailer and the end of the last record only the complete records are read
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 10));
+        responses = FixtureRecorder.read(file);
+        assertEquals(1, responses.size());
+        assertEquals(2, responses.get("/search?a=1").size());
+    }
+
+    private void run(Path domainFile, Path outputDir, String... args) throws Exception {
+        String[] common = {"-u", "user0", "user1", "user2", "-d", domainFile.toString(), "-s", "2015-01-01", "-e",
+                "2015-12-31", "-l", "all", "-p", "5", "-od", outputDir.toString()};
+        String[] all = Arrays.copyOf(common, common.length + args.length);
+        System.arraycopy(args, 0, all, common.length, args.length);
+        CommandLineParser parser = new CommandLineParser(all);
+        parser.parse();
+        Files.createDirectories(outputDir);
+        try (ReportRunner runner = new ReportRunner(parser)) {
+            runner.run(parser);
+        }
+    }
+
+    private static List<String> list(Path dir) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return Arrays.asList(files.map(path -> path.getFileName().toString()).toArray(String[]::new));
+        }
+    }
+}
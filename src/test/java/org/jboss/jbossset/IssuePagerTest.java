@@ -0,0 +1,167 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import net.rcarz.jiraclient.JiraException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ryan Emerson
+ */
+public class IssuePagerTest {
+
+    private static final int NUMBER_OF_ISSUES = 5000;
+    private static final String JQL = "(assignee = user0 OR reporter = user0) ORDER BY updated ASC";
+    private static final String FIELDS = IssueProcessor.getSearchFields();
+
+    private StubJiraServer server;
+    private ExecutorService executor;
+    private DomainClientRegistry clients;
+
+    @Before
+    public void init() throws Exception {
+        server = new StubJiraServer("JBOSS", NUMBER_OF_ISSUES, 0).setMaxPageSize(70);
+        executor = Executors.newSingleThreadExecutor();
+        clients = new DomainClientRegistry(1, 30000).setMaxRequestRate(1000)
+                .setRetryPolicy(new RetryPolicy(3, 1, 10));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        clients.close();
+        server.close();
+    }
+
+    @Test
+    public void testAllPagesStreamed() throws Exception {
+        IssuePager pager = new IssuePager(executor, clients.getClient(server.getUrl()), JQL, FIELDS, 100,
+                Integer.MAX_VALUE).start();
+        // The server caps each page at 70 issues, even though 100 are requested
+        assertEquals(NUMBER_OF_ISSUES, consume(pager, 70));
+        assertEquals((NUMBER_OF_ISSUES + 69) / 70, server.getRequests());
+        assertEquals(1, clients.getStats().get(server.getUrl()).getConnectionsOpened());
+        assertEquals("project,summary,status,reporter,assignee,created,updated", server.getLastFields());
+    }
+
+    @Test
+    public void testIssueLimitRespected() throws Exception {
+        IssuePager pager = new IssuePager(executor, clients.getClient(server.getUrl()), JQL, FIELDS, 50, 120).start();
+        assertEquals(120, consume(pager, 50));
+        assertEquals(3, server.getRequests());
+    }
+
+    @Test
+    public void testUserLimitStopsBatchedSearch() throws Exception {
+        String jql = "(assignee in (user0,user1) OR reporter in (user0,user1)) ORDER BY updated ASC";
+        IssuePager pager = new IssuePager(executor, clients.getClient(server.getUrl()), jql, FIELDS, 100,
+                Integer.MAX_VALUE).setUserLimit(new UserIssueLimit(Arrays.asList("user0", "user1"), 100)).start();
+        int issues = 0;
+        while (pager.hasNextPage())
+            issues += pager.nextPage().size();
+        // Both users reach the limit on the third page, so the fourth is never requested
+        assertEquals(210, issues);
+        assertEquals(3, server.getRequests());
+        assertTrue(pager.isTruncated());
+    }
+
+    @Test
+    public void testThrottledRequestsRetried() throws Exception {
+        server.setFailures(3, 429, 0);
+        DomainClient client = clients.getClient(server.getUrl());
+        IssuePager pager = new IssuePager(executor, client, JQL, FIELDS, 100, 700).start();
+        assertEquals(700, consume(pager, 70));
+        // Every third request was throttled and retried
+        assertEquals(4, client.getStats().getRetries());
+        assertTrue(client.getRateLimiter().getRate() < 1000);
+    }
+
+    @Test
+    public void testStoredIssuesNotFetchedAgain() throws Exception {
+        IssueStore store = new IssueStore(1000);
+        DomainClient client = clients.getClient(server.getUrl());
+        IssuePager pager = new IssuePager(executor, client, JQL, FIELDS, 100, 700).setIssueStore(store, "JBOSS");
+        assertEquals(700, consume(pager.start(), 70));
+        // Every page requires a search for its keys and a search for the issues which are not stored
+        assertEquals(20, server.getRequests());
+        assertEquals(0, store.getHits());
+        assertEquals(700, store.getMisses());
+
+        pager = new IssuePager(executor, client, JQL, FIELDS, 100, 700).setIssueStore(store, "JBOSS");
+        assertEquals(700, consume(pager.start(), 70));
+        assertEquals(30, server.getRequests());
+        assertEquals(700, store.getHits());
+        assertEquals("updated", server.getLastFields());
+    }
+
+    @Test
+    public void testIssueStoreEviction() throws Exception {
+        IssueStore store = new IssueStore(100);
+        DomainClient client = clients.getClient(server.getUrl());
+        consume(new IssuePager(executor, client, JQL, FIELDS, 100, 700).setIssueStore(store, "JBOSS").start(), 70);
+        assertEquals(100, store.size());
+        assertEquals(600, store.getEvictions());
+        long updated = IssueRecord.parseDateTime("2015-06-01T10:39:00.000+0000");
+        assertEquals("JBOSS-user0-699", store.get("JBOSS", "JBOSS-user0-699", updated).getKey());
+        assertNull(store.get("JBOSS", "JBOSS-user0-699", updated + 1));
+        assertNull(store.get("APACHE", "JBOSS-user0-699", updated));
+        assertNull(store.get("JBOSS", "JBOSS-user0-0", IssueRecord.parseDateTime("2015-06-01T10:00:00.000+0000")));
+    }
+
+    @Test(expected = JiraException.class)
+    public void testRetriesExhausted() throws Exception {
+        server.setFailures(1, 503, -1);
+        IssuePager pager = new IssuePager(executor, clients.getClient(server.getUrl()), JQL, FIELDS, 100, 700);
+        try {
+            pager.start().nextPage();
+        } finally {
+            assertEquals(4, server.getRequests());
+        }
+    }
+
+    private int consume(IssuePager pager, int maxPageSize) throws JiraException, InterruptedException {
+        int issues = 0;
+        while (pager.hasNextPage()) {
+            List<IssueRecord> page = pager.nextPage();
+            assertFalse(page.isEmpty());
+            assertTrue(page.size() <= maxPageSize);
+            for (IssueRecord issue : page) {
+                assertEquals("JBOSS-user0-" + issues++, issue.getKey());
+                assertEquals("JBOSS", issue.getProject());
+                assertEquals("user0", issue.getAssignee());
+            }
+        }
+        return issues;
+    }
+}
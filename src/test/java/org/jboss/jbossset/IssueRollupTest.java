@@ -0,0 +1,92 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import org.apache.commons.csv.CSVFormat;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Ryan Emerson
+ */
+public class IssueRollupTest {
+
+    @Test
+    public void testIssuesCountedByCombination() throws Exception {
+        // Enough combinations to resize the counters several times
+        IssueRollup rollup = new IssueRollup();
+        List<String> expected = new ArrayList<>();
+        expected.add("user,domain,project,status,role,issues");
+        for (int user = 0; user < 20; user++) {
+            for (int project = 0; project < 10; project++) {
+                String name = "user" + user;
+                for (int i = 0; i <= project; i++)
+                    rollup.add(name, "JBOSS", new IssueRecord("JBOSS-" + i, "PROJECT" + project, null,
+                            project % 2 == 0 ? "Open" : null, name, project % 3 == 0 ? name : "other", 0, 0));
+                expected.add(name + ",JBOSS,PROJECT" + project + "," + (project % 2 == 0 ? "Open" : "") + "," +
+                             (project % 3 == 0 ? "both" : "reporter") + "," + (project + 1));
+            }
+        }
+
+        assertEquals(200, rollup.size());
+        assertEquals(20 * 55, rollup.getIssues());
+        assertEquals(4, rollup.getCount("user3", "JBOSS", "PROJECT3", null, "both"));
+        assertEquals(0, rollup.getCount("user3", "JBOSS", "PROJECT3", "Open", "both"));
+        assertEquals(0, rollup.getCount("unknown", "JBOSS", "PROJECT3", null, "both"));
+
+        Path file = Files.createTempFile("summary", ".csv");
+        try {
+            rollup.write(file, CSVFormat.DEFAULT.withRecordSeparator('\n'));
+            assertEquals(expected, Files.readAllLines(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testRollupsMerged() {
+        IssueRollup first = new IssueRollup();
+        IssueRollup second = new IssueRollup();
+        IssueRecord open = new IssueRecord("JBOSS-1", "JBOSS", null, "Open", "user0", "user1", 0, 0);
+        IssueRecord resolved = new IssueRecord("JBOSS-2", "JBOSS", null, "Resolved", "user1", "user1", 0, 0);
+        first.add("user0", "JBOSS", open);
+        first.add("user1", "JBOSS", open);
+        // The second rollup interns the values in a different order
+        second.add("user1", "JBOSS", resolved);
+        second.add("user1", "JBOSS", open);
+        second.add("user0", "APACHE", open);
+
+        first.merge(second);
+        assertEquals(5, first.getIssues());
+        assertEquals(4, first.size());
+        assertEquals(1, first.getCount("user0", "JBOSS", "JBOSS", "Open", "reporter"));
+        assertEquals(1, first.getCount("user0", "APACHE", "JBOSS", "Open", "reporter"));
+        assertEquals(2, first.getCount("user1", "JBOSS", "JBOSS", "Open", "assignee"));
+        assertEquals(1, first.getCount("user1", "JBOSS", "JBOSS", "Resolved", "both"));
+    }
+}
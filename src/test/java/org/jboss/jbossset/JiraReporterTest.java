@@ -28,16 +28,20 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 
 /**
@@ -49,20 +53,24 @@ public class JiraReporterTest {
     private static final String USERS_FILE_URL = "users";
     private static final String DOMAIN_FILE_URL = "domains";
 
+    private static StubJiraServer jira;
+
     @BeforeClass
     public static void init() throws Exception {
+        jira = new StubJiraServer("JIRA", 0, 0);
         List<String> users = new ArrayList<>();
         for (int i = 0; i < NUMBER_OF_USERS; i++)
             users.add("user" + i);
         Files.write(Paths.get("", USERS_FILE_URL), users, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
 
         Properties p = new Properties();
-        p.put("JIRA", "https://issues.jboss.org");
+        p.put("JIRA", jira.getUrl());
         p.store(new PrintWriter(new File(DOMAIN_FILE_URL)), null);
     }
 
     @AfterClass
     public static void tearDown() throws Exception {
+        jira.close();
         Files.delete(Paths.get("", USERS_FILE_URL));
         Files.delete(Paths.get("", DOMAIN_FILE_URL));
     }
@@ -126,6 +134,84 @@ public class JiraReporterTest {
         assertNotNull(parser.getDomains());
     }
 
+    @Test
+    public void testResumeOption() throws ParseException {
+        CommandLineParser parser = new CommandLineParser("-u user1 --resume".split(" "));
+        parser.parse();
+        assertTrue(parser.isResume());
+    }
+
+    @Test
+    public void testCommentsOption() throws ParseException {
+        CommandLineParser parser = new CommandLineParser("-u user1 --comments".split(" "));
+        parser.parse();
+        assertTrue(parser.isComments());
+    }
+
+    @Test
+    public void testDomainTimeouts() throws Exception {
+        Properties p = new Properties();
+        p.put("JIRA", jira.getUrl());
+        p.put("JIRA.connectTimeout", "500");
+        p.put("JIRA.readTimeout", "2000");
+        Path file = Files.createTempFile("domains", ".properties");
+        try {
+            try (Writer writer = Files.newBufferedWriter(file)) {
+                p.store(writer, null);
+            }
+            CommandLineParser parser = new CommandLineParser(("-u user1 -d " + file).split(" "));
+            parser.parse();
+            assertEquals(Collections.singletonMap("JIRA", jira.getUrl()), parser.getDomains());
+            assertEquals(Integer.valueOf(500), parser.getConnectTimeouts().get("JIRA"));
+            assertEquals(Integer.valueOf(2000), parser.getReadTimeouts().get("JIRA"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testDottedDomainName() throws Exception {
+        Properties p = new Properties();
+        p.put("issues.jboss.org", jira.getUrl());
+        p.put("issues.jboss.org.readTimeout", "2000");
+        Path file = Files.createTempFile("domains", ".properties");
+        try {
+            try (Writer writer = Files.newBufferedWriter(file)) {
+                p.store(writer, null);
+            }
+            CommandLineParser parser = new CommandLineParser(("-u user1 -d " + file).split(" "));
+            parser.parse();
+            assertEquals(Collections.singletonMap("issues.jboss.org", jira.getUrl()), parser.getDomains());
+            assertEquals(Integer.valueOf(2000), parser.getReadTimeouts().get("issues.jboss.org"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testCircuitBreakerOptions() throws ParseException {
+        CommandLineParser parser = new CommandLineParser("-u user1 --failureThreshold 2 --breakerTimeout 5".split(" "));
+        parser.parse();
+        assertEquals(2, parser.getFailureThreshold());
+        assertEquals(5, parser.getBreakerTimeout());
+    }
+
+    @Test(expected = ParseException.class)
+    public void testTimeoutOfUnknownDomain() throws Exception {
+        Properties p = new Properties();
+        p.put("JIRA", jira.getUrl());
+        p.put("APACHE.readTimeout", "2000");
+        Path file = Files.createTempFile("domains", ".properties");
+        try {
+            try (Writer writer = Files.newBufferedWriter(file)) {
+                p.store(writer, null);
+            }
+            new CommandLineParser(("-u user1 -d " + file).split(" ")).parse();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
     private void testUsernames(List<String> users) {
         assertNotNull(users);
         assertEquals(users.size(), NUMBER_OF_USERS);
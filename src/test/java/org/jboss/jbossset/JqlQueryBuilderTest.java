@@ -0,0 +1,96 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Ryan Emerson
+ */
+public class JqlQueryBuilderTest {
+
+    @Test
+    public void testPlainWordsNotQuoted() {
+        assertEquals("user0", JqlQueryBuilder.quote("user0"));
+        assertEquals("John_Smith", JqlQueryBuilder.quote("John_Smith"));
+    }
+
+    @Test
+    public void testReservedWordsQuoted() {
+        assertEquals("\"or\"", JqlQueryBuilder.quote("or"));
+        assertEquals("\"EMPTY\"", JqlQueryBuilder.quote("EMPTY"));
+        assertEquals("\"user\"", JqlQueryBuilder.quote("user"));
+    }
+
+    @Test
+    public void testSpecialCharactersEscaped() {
+        assertEquals("\"jane.doe@example.com\"", JqlQueryBuilder.quote("jane.doe@example.com"));
+        assertEquals("\"o\\'brien\"", JqlQueryBuilder.quote("o'brien"));
+        assertEquals("\"a\\\"b\\\\c\"", JqlQueryBuilder.quote("a\"b\\c"));
+        assertEquals("\"x) OR project = SECRET OR (y\"", JqlQueryBuilder.quote("x) OR project = SECRET OR (y"));
+        assertEquals("\"tab\\there\\nnew\\u0001\"", JqlQueryBuilder.quote("tab\there\nnew\u0001"));
+        assertEquals("\"\"", JqlQueryBuilder.quote(""));
+    }
+
+    @Test
+    public void testQueriesComposed() {
+        String body = JqlQueryBuilder.getDateRangeBody(LocalDate.of(2015, 1, 1), LocalDate.of(2016, 1, 1), "ASC");
+        JqlQueryBuilder builder = new JqlQueryBuilder(body, 10);
+        assertEquals("(assignee = user0 OR reporter = user0) AND updated >= '2015-06-01' " + body,
+                builder.build(Collections.singletonList("user0"),
+                        JqlQueryBuilder.updatedSince(LocalDate.of(2015, 6, 1))));
+        assertEquals("(assignee in (user0,\"jane.doe\") OR reporter in (user0,\"jane.doe\")) " +
+                     "AND updated < '2015-06-01 10:00' " + body,
+                builder.build(Arrays.asList("user0", "jane.doe"),
+                        JqlQueryBuilder.updatedWithin(null, "2015-06-01 10:00")));
+    }
+
+    @Test
+    public void testBatchClauseLength() {
+        List<String> users = Arrays.asList("user0", "jane.doe", "or");
+        JqlQueryBuilder builder = new JqlQueryBuilder("", 10);
+        int userListLength = 0;
+        for (String user : users)
+            userListLength += JqlQueryBuilder.quote(user).length() + 1;
+        assertEquals(builder.build(users).length(), JqlQueryBuilder.getBatchClauseLength(userListLength - 1));
+    }
+
+    @Test
+    public void testQueriesCached() {
+        JqlQueryBuilder builder = new JqlQueryBuilder("ORDER BY updated ASC", 2);
+        String query = builder.build(Arrays.asList("user0", "user1"), "AND updated >= '2015-06-01' ");
+        assertSame(query, builder.build(Arrays.asList("user0", "user1"), "AND updated >= '2015-06-01' "));
+
+        // Filling the cache evicts the least recently used query
+        builder.build(Collections.singletonList("user2"));
+        builder.build(Collections.singletonList("user3"));
+        assertEquals(query, builder.build(Arrays.asList("user0", "user1"), "AND updated >= '2015-06-01' "));
+    }
+}
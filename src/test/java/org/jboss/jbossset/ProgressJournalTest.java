@@ -0,0 +1,110 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ryan Emerson
+ */
+public class ProgressJournalTest {
+
+    private Path dir;
+
+    @Before
+    public void init() throws Exception {
+        dir = Files.createTempDirectory("jira-reporter-journal");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(dir.resolve(ProgressJournal.FILE_NAME));
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testProgressLoaded() throws Exception {
+        try (ProgressJournal journal = ProgressJournal.open(dir, "run", false)) {
+            journal.recordDomain("user0", "APACHE", 100);
+            journal.recordDomain("user0", "JBOSS", 250);
+            journal.recordDomain("user1", "APACHE", 80);
+            journal.recordComplete("user1");
+            journal.recordDomain("user2", "APACHE", 50);
+            journal.recordReset("user2");
+        }
+
+        try (ProgressJournal journal = ProgressJournal.open(dir, "run", true)) {
+            ProgressJournal.UserProgress user0 = journal.getProgress("user0");
+            assertEquals(new HashSet<>(Arrays.asList("APACHE", "JBOSS")), user0.getDomains());
+            assertEquals(250, user0.getOffset());
+            assertFalse(user0.isComplete());
+            assertTrue(journal.getProgress("user1").isComplete());
+            assertNull(journal.getProgress("user2"));
+            assertEquals(1, journal.getCompletedUsers());
+        }
+    }
+
+    @Test
+    public void testTornRecordDiscarded() throws Exception {
+        try (ProgressJournal journal = ProgressJournal.open(dir, "run", false)) {
+            journal.recordDomain("user0", "APACHE", 100);
+        }
+        Files.write(dir.resolve(ProgressJournal.FILE_NAME), "D\tuser0\tJBO".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        try (ProgressJournal journal = ProgressJournal.open(dir, "run", true)) {
+            assertEquals(Collections.singleton("APACHE"), journal.getProgress("user0").getDomains());
+            journal.recordDomain("user0", "JBOSS", 200);
+        }
+        try (ProgressJournal journal = ProgressJournal.open(dir, "run", true)) {
+            assertEquals(200, journal.getProgress("user0").getOffset());
+        }
+    }
+
+    @Test
+    public void testJournalOfDifferentRunDiscarded() throws Exception {
+        try (ProgressJournal journal = ProgressJournal.open(dir, "run", false)) {
+            journal.recordComplete("user0");
+        }
+        try (ProgressJournal journal = ProgressJournal.open(dir, "other run", true)) {
+            assertNull(journal.getProgress("user0"));
+        }
+        try (ProgressJournal journal = ProgressJournal.open(dir, "run", true)) {
+            assertNull(journal.getProgress("user0"));
+        }
+    }
+}
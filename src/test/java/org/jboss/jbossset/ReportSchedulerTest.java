@@ -0,0 +1,513 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.csv.CSVFormat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ryan Emerson
+ */
+public class ReportSchedulerTest {
+
+    private static final int ISSUES_PER_USER = 3;
+    private static final List<String> USERS = Arrays.asList("user0", "user1", "user2", "user3", "user4", "user5");
+
+    private StubJiraServer jboss;
+    private StubJiraServer apache;
+    private Path outputDir;
+    private DomainClientRegistry clients;
+
+    @Before
+    public void init() throws Exception {
+        jboss = new StubJiraServer("JBOSS", ISSUES_PER_USER, 10);
+        apache = new StubJiraServer("APACHE", ISSUES_PER_USER, 100);
+        outputDir = Files.createTempDirectory("jira-reporter");
+        clients = new DomainClientRegistry(3, 30000).setMaxRequestRate(1000).setRetryPolicy(new RetryPolicy(1, 1, 10));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        clients.close();
+        jboss.close();
+        apache.close();
+        for (String user : USERS)
+            Files.deleteIfExists(outputDir.resolve(user + ".csv"));
+        Files.delete(outputDir);
+    }
+
+    @Test
+    public void testConcurrentSearchesWrittenInDomainOrder() throws Exception {
+        Map<String, String> domains = getDomains();
+        try (ReportScheduler scheduler = new ReportScheduler(domains, clients, "ORDER BY updated ASC", CSVFormat.EXCEL,
+                50, 3, outputDir)) {
+            scheduler.run(USERS, "");
+        }
+
+        assertEquals(USERS.size(), apache.getRequests());
+        assertEquals(USERS.size(), jboss.getRequests());
+        assertTrue(apache.getMaxConcurrentRequests() > 1);
+        assertTrue(apache.getMaxConcurrentRequests() <= 3);
+        assertUserFiles(domains);
+
+        // Connections are pooled per domain, so at most one connection per search thread is ever opened
+        DomainClientRegistry.ConnectionStats stats = clients.getStats().get(apache.getUrl());
+        assertEquals(USERS.size(), stats.getRequests());
+        assertTrue(stats.getConnectionsOpened() <= 3);
+    }
+
+    @Test
+    public void testVirtualThreadSearchesBoundedPerDomain() throws Exception {
+        Map<String, String> domains = getDomains();
+        try (ReportScheduler scheduler = new ReportScheduler(domains, clients, "ORDER BY updated ASC", CSVFormat.EXCEL,
+                50, 2, outputDir)) {
+            scheduler.setVirtualThreads(true).run(USERS, "");
+        }
+
+        assertEquals(USERS.size(), apache.getRequests());
+        assertEquals(USERS.size(), jboss.getRequests());
+        assertTrue(apache.getMaxConcurrentRequests() > 1);
+        assertTrue(apache.getMaxConcurrentRequests() <= 2);
+        assertUserFiles(domains);
+    }
+
+    @Test
+    public void testShardedSearchesWrittenInOrder() throws Exception {
+        Map<String, String> domains = getDomains();
+        try (ReportScheduler scheduler = new ReportScheduler(domains, clients, "ORDER BY updated ASC", CSVFormat.EXCEL,
+                50, 3, outputDir)) {
+            scheduler.setSharding(LocalDate.of(2015, 6, 1), LocalDate.of(2015, 6, 2), false, 2).run(USERS, "");
+        }
+
+        // Each user's issues are split into several windows, which are each probed as well as searched
+        assertTrue(apache.getRequests() > USERS.size() * ISSUES_PER_USER);
+        assertTrue(apache.getLastQuery().contains("updated "));
+        assertUserFiles(domains);
+    }
+
+    @Test
+    public void testInterruptedRunResumed() throws Exception {
+        Map<String, String> domains = getDomains();
+        List<String> user0 = getExpectedLines(domains, "user0");
+        String apacheSection = String.join("\r\n", user0.subList(0, ISSUES_PER_USER + 3)) + "\r\n";
+        try (ProgressJournal journal = ProgressJournal.open(outputDir, "run", false)) {
+            // user0 was interrupted whilst writing its second domain, and user1 was completed
+            Files.write(outputDir.resolve("user0.csv"), (apacheSection + "JBOSS Issues\r\nJBOSS-us").getBytes());
+            journal.recordDomain("user0", "APACHE", apacheSection.length());
+            Files.write(outputDir.resolve("user1.csv"), "completed".getBytes());
+            journal.recordComplete("user1");
+        }
+
+        try (ProgressJournal journal = ProgressJournal.open(outputDir, "run", true);
+             ReportScheduler scheduler = new ReportScheduler(domains, clients, "ORDER BY updated ASC", CSVFormat.EXCEL,
+                     50, 3, outputDir)) {
+            assertEquals(1, journal.getCompletedUsers());
+            scheduler.setJournal(journal).run(USERS, "");
+        }
+
+        assertEquals(USERS.size() - 2, apache.getRequests());
+        assertEquals(USERS.size() - 1, jboss.getRequests());
+        assertEquals(user0, Files.readAllLines(outputDir.resolve("user0.csv")));
+        assertEquals(Collections.singletonList("completed"), Files.readAllLines(outputDir.resolve("user1.csv")));
+        for (String user : USERS.subList(2, USERS.size()))
+            assertEquals(getExpectedLines(domains, user), Files.readAllLines(outputDir.resolve(user + ".csv")));
+
+        // Every user is now complete, so resuming again searches nothing
+        try (ProgressJournal journal = ProgressJournal.open(outputDir, "run", true);
+             ReportScheduler scheduler = new ReportScheduler(domains, clients, "ORDER BY updated ASC", CSVFormat.EXCEL,
+                     50, 3, outputDir)) {
+            assertEquals(USERS.size(), journal.getCompletedUsers());
+            scheduler.setJournal(journal).run(USERS, "");
+        }
+        assertEquals(USERS.size() - 2, apache.getRequests());
+        Files.delete(outputDir.resolve(ProgressJournal.FILE_NAME));
+    }
+
+    @Test
+    public void testQuotedUsersSearched() throws Exception {
+        List<String> users = Arrays.asList("jane.doe", "or");
+        Map<String, String> domains = getDomains();
+        try (ReportScheduler scheduler = new ReportScheduler(domains, clients, "ORDER BY updated ASC", CSVFormat.EXCEL,
+                50, 3, outputDir)) {
+            scheduler.setMaxQueryLength(1000).run(users, "");
+        }
+
+        assertEquals("(assignee in (\"jane.doe\",\"or\") OR reporter in (\"jane.doe\",\"or\")) ORDER BY updated ASC",
+                apache.getLastQuery());
+        for (String user : users) {
+            Path file = outputDir.resolve(user + ".csv");
+            assertEquals(getExpectedLines(domains, user), Files.readAllLines(file));
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testBatchedSearchesDemultiplexedToUsers() throws Exception {
+        Map<String, String> domains = getDomains();
+        String queryBody = "ORDER BY updated ASC";
+        // Allows three users per query: "(assignee in (user0,user1,user2) OR reporter in (user0,user1,user2)) "
+        int maxQueryLength = 69 + queryBody.length();
+        try (ReportScheduler scheduler = new ReportScheduler(domains, clients, queryBody, CSVFormat.EXCEL, 50, 3,
+                outputDir)) {
+            scheduler.setMaxQueryLength(maxQueryLength).run(USERS, "");
+        }
+
+        assertEquals(2, apache.getRequests());
+        assertEquals(2, jboss.getRequests());
+        assertUserFiles(domains);
+    }
+
+    @Test
+    public void testBatchedSearchesReachIssueLimitOfEveryUser() throws Exception {
+        // The older issues of user0 are returned before any issues of the other users
+        apache.setIssues("user0", 40).setMaxPageSize(10);
+        Map<String, String> domains = Collections.singletonMap("APACHE", apache.getUrl());
+        int issueLimit = 5;
+        try (ReportScheduler scheduler = new ReportScheduler(domains, clients, "ORDER BY updated ASC",
+                CSVFormat.EXCEL, issueLimit, 3, outputDir)) {
+            scheduler.setPageSize(10).setMaxQueryLength(1000).run(USERS, "");
+        }
+
+        for (String user : USERS) {
+            int issues = user.equals("user0") ? issueLimit : ISSUES_PER_USER;
+            assertEquals(getExpectedLines(domains, user, issues),
+                    Files.readAllLines(outputDir.resolve(user + ".csv")));
+        }
+        // The other users' issues are only reached on the last of the 55 issues' pages
+        assertEquals(6, apache.getRequests());
+    }
+
+    @Test
+    public void testBatchedSearchStopsOnceEveryUserReachesIssueLimit() throws Exception {
+        for (String user : USERS)
+            apache.setIssues(user, 40);
+        apache.setMaxPageSize(10);
+        Map<String, String> domains = Collections.singletonMap("APACHE", apache.getUrl());
+        int issueLimit = 5;
+        try (ReportScheduler scheduler = new ReportScheduler(domains, clients, "ORDER BY updated ASC",
+                CSVFormat.EXCEL, issueLimit, 3, outputDir)) {
+            scheduler.setPageSize(10).setMaxQueryLength(1000).run(USERS, "");
+        }
+
+        for (String user : USERS) {
+            assertEquals(getExpectedLines(domains, user, issueLimit),
+                    Files.readAllLines(outputDir.resolve(user + ".csv")));
+        }
+        // Every user reaches the limit on the third of the 24 pages, after which no further page is requested
+        assertEquals(3, apache.getRequests());
+    }
+
+    @Test
+    public void testCachedIssuesMergedWithDeltaSearch() throws Exception {
+        Map<String, String> domains = getDomains();
+        Path cacheDir = outputDir.resolve("cache");
+        LocalDate start = LocalDate.of(2015, 1, 1);
+        String queryBody = "ORDER BY updated ASC";
+        for (int run = 0; run < 2; run++) {
+            try (IssueCache cache = new IssueCache(cacheDir, start, LocalDate.now(), false);
+                 ReportScheduler scheduler = new ReportScheduler(domains, clients, queryBody, CSVFormat.EXCEL, 50, 3,
+                         outputDir)) {
+                scheduler.setIssueCache(cache).run(USERS, "");
+            }
+            assertUserFiles(domains);
+        }
+
+        // The second run only searched for issues updated since the first run
+        assertTrue(apache.getLastQuery().contains("updated >= '" + LocalDate.now().minusDays(1) + "'"));
+        for (String domain : domains.keySet()) {
+            Files.delete(cacheDir.resolve(domain + ".records"));
+            Files.delete(cacheDir.resolve(domain + ".sync"));
+        }
+        Files.delete(cacheDir);
+    }
+
+    @Test
+    public void testDeltaSearchStartsAtEndOfPreviousRun() throws Exception {
+        Map<String, String> domains = getDomains();
+        Path cacheDir = outputDir.resolve("cache");
+        LocalDate start = LocalDate.of(2015, 1, 1);
+        String queryBody = "ORDER BY updated ASC";
+        // The first run only retrieved the issues up to its end date, rather than up to the date it was run
+        for (LocalDate end : Arrays.asList(LocalDate.of(2015, 2, 1), LocalDate.now())) {
+            try (IssueCache cache = new IssueCache(cacheDir, start, end, false);
+                 ReportScheduler scheduler = new ReportScheduler(domains, clients, queryBody, CSVFormat.EXCEL, 50, 3,
+                         outputDir)) {
+                scheduler.setIssueCache(cache).run(USERS, "");
+            }
+            assertUserFiles(domains);
+        }
+
+        assertTrue(apache.getLastQuery(), apache.getLastQuery().contains("updated >= '2015-01-31'"));
+        for (String domain : domains.keySet()) {
+            Files.delete(cacheDir.resolve(domain + ".records"));
+            Files.delete(cacheDir.resolve(domain + ".sync"));
+        }
+        Files.delete(cacheDir);
+    }
+
+    @Test
+    public void testUserCommentsCounted() throws Exception {
+        Map<String, String> domains = getDomains();
+        Path cacheDir = outputDir.resolve("cache");
+        String queryBody = "ORDER BY updated ASC";
+        // The second run merges the comment counts of the cached issues with those of the delta search
+        for (int run = 0; run < 2; run++) {
+            try (IssueCache cache = new IssueCache(cacheDir, LocalDate.of(2015, 1, 1), LocalDate.now(), false);
+                 ReportScheduler scheduler = new ReportScheduler(domains, clients, queryBody, CSVFormat.EXCEL, 50, 3,
+                         outputDir)) {
+                scheduler.setIssueCache(cache).setMaxQueryLength(69 + queryBody.length()).setComments(true)
+                        .run(USERS, "");
+            }
+
+            assertEquals("project,summary,status,reporter,assignee,created,updated,comment", apache.getLastFields());
+            for (String user : USERS) {
+                List<String> expected = new ArrayList<>();
+                for (String line : getExpectedLines(domains, user)) {
+                    if (line.startsWith("key,"))
+                        expected.add(line + ",comments");
+                    else if (line.contains(","))
+                        expected.add(line + "," + Integer.parseInt(line.substring(line.indexOf("Issue ") + 6,
+                                line.indexOf(" of "))) % 3);
+                    else
+                        expected.add(line);
+                }
+                assertEquals(expected, Files.readAllLines(outputDir.resolve(user + ".csv")));
+            }
+        }
+
+        for (String domain : domains.keySet()) {
+            Files.delete(cacheDir.resolve(domain + ".records"));
+            Files.delete(cacheDir.resolve(domain + ".sync"));
+        }
+        Files.delete(cacheDir);
+    }
+
+    @Test
+    public void testFailedSearchesReported() throws Exception {
+        apache.setFailures(1, 503, -1);
+        // Every search is expected to reach the domain, so the breaker must not open
+        clients.setCircuitBreaker(Integer.MAX_VALUE, 0);
+        RunReport report;
+        try (ReportScheduler scheduler = new ReportScheduler(getDomains(), clients, "ORDER BY updated ASC",
+                CSVFormat.EXCEL, 50, 3, outputDir)) {
+            scheduler.run(USERS, "");
+            report = scheduler.getRunReport();
+        }
+
+        // Each search is attempted once and retried once before failing
+        assertEquals(USERS.size() * 2, apache.getRequests());
+        assertEquals(USERS.size(), report.getFailures().size());
+        for (RunReport.Failure failure : report.getFailures())
+            assertEquals("APACHE", failure.getDomain());
+    }
+
+    @Test
+    public void testFailingDomainFailsFast() throws Exception {
+        apache.setFailures(1, 503, -1);
+        clients.setCircuitBreaker(2, 60000);
+        RunReport report;
+        try (ReportScheduler scheduler = new ReportScheduler(getDomains(), clients, "ORDER BY updated ASC",
+                CSVFormat.EXCEL, 50, 3, outputDir)) {
+            scheduler.run(USERS, "");
+            report = scheduler.getRunReport();
+        }
+
+        // Once the breaker has opened the remaining searches fail without a request, bar those already in flight on
+        // each of the three threads, each of which may have been retried before the breaker opened
+        assertTrue(apache.getRequests() <= 6);
+        assertEquals(USERS.size(), jboss.getRequests());
+        assertEquals(USERS.size(), report.getFailures().size());
+        for (RunReport.Failure failure : report.getFailures())
+            assertEquals("APACHE", failure.getDomain());
+        assertUserFiles(Collections.singletonMap("JBOSS", jboss.getUrl()));
+    }
+
+    @Test
+    public void testServerErrorFailsProbe() throws Exception {
+        HttpServer failing = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        failing.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+            }
+        });
+        failing.start();
+        try {
+            String url = "http://localhost:" + failing.getAddress().getPort();
+            assertEquals(Boolean.FALSE, clients.probe(Collections.singletonList(url)).get(url));
+            assertTrue(clients.getClient(url).getCircuitBreaker().isOpen());
+        } finally {
+            failing.stop(0);
+        }
+    }
+
+    @Test
+    public void testUnreachableDomainProbed() throws Exception {
+        StubJiraServer dead = new StubJiraServer("DEAD", ISSUES_PER_USER, 0);
+        dead.close();
+        Map<String, String> domains = new LinkedHashMap<>();
+        domains.put("DEAD", dead.getUrl());
+        domains.put("JBOSS", jboss.getUrl());
+
+        Map<String, Boolean> health = clients.probe(domains.values());
+        assertEquals(Boolean.FALSE, health.get(dead.getUrl()));
+        assertEquals(Boolean.TRUE, health.get(jboss.getUrl()));
+        assertTrue(clients.getClient(dead.getUrl()).getCircuitBreaker().isOpen());
+        assertTrue(clients.getClient(jboss.getUrl()).getLatencyMillis() >= 10);
+        // Each domain is only probed once
+        assertTrue(clients.probe(domains.values()).isEmpty());
+
+        RunReport report;
+        try (ReportScheduler scheduler = new ReportScheduler(domains, clients, "ORDER BY updated ASC",
+                CSVFormat.EXCEL, 50, 3, outputDir)) {
+            scheduler.run(USERS, "");
+            report = scheduler.getRunReport();
+        }
+        assertEquals(USERS.size(), report.getFailures().size());
+        for (RunReport.Failure failure : report.getFailures()) {
+            assertEquals("DEAD", failure.getDomain());
+            assertTrue(failure.getReason().contains("circuit breaker is open"));
+        }
+        assertEquals(0, clients.getStats().get(dead.getUrl()).getRequests());
+        assertUserFiles(Collections.singletonMap("JBOSS", jboss.getUrl()));
+    }
+
+    @Test
+    public void testColumnarExport() throws Exception {
+        Map<String, String> domains = getDomains();
+        Path file = outputDir.resolve("issues.jrc");
+        try (ColumnarExporter exporter = new ColumnarExporter(file);
+             ReportScheduler scheduler = new ReportScheduler(domains, clients, "ORDER BY updated ASC", CSVFormat.EXCEL,
+                     50, 3, outputDir)) {
+            scheduler.setColumnarExporter(exporter).run(USERS, "");
+        }
+        assertUserFiles(domains);
+
+        ColumnarReader reader = new ColumnarReader(file);
+        assertEquals(USERS.size() * domains.size() * ISSUES_PER_USER, reader.getRows());
+        assertEquals(USERS, reader.getDictionary("user"));
+        assertEquals(Arrays.asList("APACHE", "JBOSS"), reader.getDictionary("domain"));
+        int row = 0;
+        for (ColumnarReader.Row issue : reader.readRows()) {
+            String user = USERS.get(row / (domains.size() * ISSUES_PER_USER));
+            String domain = row / ISSUES_PER_USER % 2 == 0 ? "APACHE" : "JBOSS";
+            assertEquals(user, issue.getUser());
+            assertEquals(domain, issue.getDomain());
+            assertEquals("both", issue.getRole());
+            assertEquals(domain + "-" + user + "-" + row % ISSUES_PER_USER, issue.getIssue().getKey());
+            row++;
+        }
+        Files.delete(file);
+    }
+
+    @Test
+    public void testIssuesRolledUp() throws Exception {
+        Map<String, String> domains = getDomains();
+        IssueRollup rollup = new IssueRollup();
+        try (ReportScheduler scheduler = new ReportScheduler(domains, clients, "ORDER BY updated ASC", CSVFormat.EXCEL,
+                50, 3, outputDir)) {
+            scheduler.setRollup(rollup).setMaxQueryLength(1000).run(USERS, "");
+        }
+        assertUserFiles(domains);
+
+        assertEquals(USERS.size() * domains.size() * ISSUES_PER_USER, rollup.getIssues());
+        assertEquals(USERS.size() * domains.size(), rollup.size());
+        for (String user : USERS)
+            for (String domain : domains.keySet())
+                assertEquals(ISSUES_PER_USER, rollup.getCount(user, domain, domain, "Open", "both"));
+    }
+
+    @Test
+    public void testAsynchronousGzipOutput() throws Exception {
+        Map<String, String> domains = getDomains();
+        try (ReportScheduler scheduler = new ReportScheduler(domains, clients, "ORDER BY updated ASC", CSVFormat.EXCEL,
+                50, 3, outputDir)) {
+            scheduler.setWriterThreads(2).setGzip(true).run(USERS, "");
+        }
+
+        for (String user : USERS) {
+            Path file = outputDir.resolve(user + ".csv.gz");
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+                List<String> lines = new ArrayList<>();
+                for (String line = reader.readLine(); line != null; line = reader.readLine())
+                    lines.add(line);
+                assertEquals(getExpectedLines(domains, user), lines);
+            }
+            Files.delete(file);
+        }
+    }
+
+    private Map<String, String> getDomains() {
+        Map<String, String> domains = new LinkedHashMap<>();
+        domains.put("APACHE", apache.getUrl());
+        domains.put("JBOSS", jboss.getUrl());
+        return domains;
+    }
+
+    private void assertUserFiles(Map<String, String> domains) throws Exception {
+        for (String user : USERS)
+            assertEquals(getExpectedLines(domains, user), Files.readAllLines(outputDir.resolve(user + ".csv")));
+    }
+
+    private List<String> getExpectedLines(Map<String, String> domains, String user) {
+        return getExpectedLines(domains, user, ISSUES_PER_USER);
+    }
+
+    private List<String> getExpectedLines(Map<String, String> domains, String user, int issues) {
+        List<String> expected = new ArrayList<>();
+        for (String domain : domains.keySet()) {
+            expected.add(domain + " Issues");
+            expected.add("key,project,summary,status,reporter,assignee");
+            for (int i = 0; i < issues; i++)
+                expected.add(domain + "-" + user + "-" + i + "," + domain + ",Issue " + i + " of " + user +
+                             ",Open," + user + "," + user);
+            expected.add("");
+        }
+        return expected;
+    }
+}
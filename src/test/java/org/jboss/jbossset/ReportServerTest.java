@@ -0,0 +1,208 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ryan Emerson
+ */
+public class ReportServerTest {
+
+    private StubJiraServer jboss;
+    private Path dir;
+    private Path domainFile;
+    private ReportRunner runner;
+    private ReportServer server;
+
+    @Before
+    public void init() throws Exception {
+        jboss = new StubJiraServer("JBOSS", 3, 0);
+        dir = Files.createTempDirectory("jira-reporter");
+        domainFile = dir.resolve("domains.properties");
+        Files.write(domainFile, Arrays.asList("JBOSS=" + jboss.getUrl()));
+
+        CommandLineParser parser = new CommandLineParser(new String[] {"--serve", "0", "-d", domainFile.toString(),
+                "-cd", dir.resolve("cache").toString(), "-od", dir.toString()});
+        parser.parse();
+        runner = new ReportRunner(parser);
+        server = new ReportServer(runner, parser);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        runner.close();
+        jboss.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testReportsRequested() throws Exception {
+        long connectionsOpened = 0;
+        for (int report = 0; report < 2; report++) {
+            Path outputDir = Files.createDirectories(dir.resolve("report" + report));
+            String args = "-t 1 -od report" + report + " -u user" + report + " user9 -s 2015-01-01";
+            assertEquals("All user/domain searches completed successfully\n", post("/report", args, 200));
+            assertTrue(Files.exists(outputDir.resolve("user" + report + ".csv")));
+            assertTrue(Files.exists(outputDir.resolve("user9.csv")));
+            if (report == 0)
+                connectionsOpened = runner.getClients().getStats().get(jboss.getUrl()).getConnectionsOpened();
+        }
+
+        String status = get("/status", 200);
+        assertTrue(status, status.startsWith("Reports run: 2\n"));
+        // The second report reused the connections pooled by the first
+        assertEquals(connectionsOpened, runner.getClients().getStats().get(jboss.getUrl()).getConnectionsOpened());
+        // The second report of user9 was a delta search against the warm issue cache
+        assertTrue(jboss.getLastQuery().contains("AND updated >= "));
+    }
+
+    @Test
+    public void testStatusWhileReportRunning() throws Exception {
+        Files.createDirectories(dir.resolve("report"));
+        jboss.setLatency(1000);
+        ExecutorService client = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> report = client.submit(() -> post("/report", "-od report -u user1", 200));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (jboss.getRequests() == 0 && System.nanoTime() < deadline)
+                Thread.sleep(10);
+
+            // The status is returned whilst the report is still waiting for its search
+            String status = get("/status", 200);
+            assertTrue(status, status.startsWith("Reports run: 0\n"));
+            assertFalse(report.isDone());
+            assertEquals("All user/domain searches completed successfully\n", report.get(10, TimeUnit.SECONDS));
+        } finally {
+            client.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testInvalidRequests() throws Exception {
+        String response = post("/report", "-s not-a-date", 400);
+        assertTrue(response, response.startsWith("Error parsing report arguments"));
+        get("/report", 405);
+        assertTrue(post("/report", "--help", 200).contains("usage: POST /report"));
+    }
+
+    @Test
+    public void testRequestsWithoutTokenRejected() throws Exception {
+        assertEquals(server.getToken(), new String(Files.readAllBytes(dir.resolve(ReportServer.TOKEN_FILE)),
+                StandardCharsets.UTF_8));
+        assertEquals(401, post("/report", "-u user1", null).getResponseCode());
+        assertEquals(401, post("/shutdown", "", "not-the-token").getResponseCode());
+        assertEquals(401, open("/status", null).getResponseCode());
+        // The server is still running
+        get("/status", 200);
+    }
+
+    @Test
+    public void testRemoteOptionsRestricted() throws Exception {
+        assertTrue(post("/report", "-u user1 -d " + domainFile, 403).contains("domainFile"));
+        assertTrue(post("/report", "-u user1 --record " + dir, 403).contains("record"));
+        assertTrue(post("/report", "-uf " + domainFile, 403).contains("userFile"));
+        post("/report", "-od " + dir.resolve("report") + " -u user1", 400);
+        post("/report", "-od report/../.. -u user1", 400);
+        assertEquals("Reports run: 0\n", get("/status", 200).split("(?<=\n)")[0]);
+    }
+
+    @Test
+    public void testTraversalUsernamesRejected() throws Exception {
+        Files.createDirectories(dir.resolve("report"));
+        Path outside = Files.createDirectories(dir.resolve("outside"));
+        assertTrue(post("/report", "-od report -u ../outside/user1", 400).contains("Invalid username"));
+        post("/report", "-od report -u user1 ../../user2", 400);
+        post("/report", "-od report -u " + outside.resolve("user3"), 400);
+        post("/report", "-od report -u ..\\user4", 400);
+        assertEquals("Reports run: 0\n", get("/status", 200).split("(?<=\n)")[0]);
+        try (Stream<Path> files = Files.list(outside)) {
+            assertEquals(0, files.count());
+        }
+        assertTrue(Files.notExists(dir.resolve("user2.csv")));
+        assertTrue(Files.notExists(dir.resolve("report").resolve("user1.csv")));
+    }
+
+    private String get(String path, int expectedStatus) throws IOException {
+        HttpURLConnection connection = open(path, server.getToken());
+        return readResponse(connection, expectedStatus);
+    }
+
+    private String post(String path, String body, int expectedStatus) throws IOException {
+        return readResponse(post(path, body, server.getToken()), expectedStatus);
+    }
+
+    private HttpURLConnection post(String path, String body, String token) throws IOException {
+        HttpURLConnection connection = open(path, token);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return connection;
+    }
+
+    private HttpURLConnection open(String path, String token) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path)
+                .openConnection();
+        if (token != null)
+            connection.setRequestProperty("Authorization", "Bearer " + token);
+        return connection;
+    }
+
+    private static String readResponse(HttpURLConnection connection, int expectedStatus) throws IOException {
+        assertEquals(expectedStatus, connection.getResponseCode());
+        try (InputStream in = expectedStatus < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer))
+                out.write(buffer, 0, read);
+            return out.toString("UTF-8");
+        }
+    }
+}
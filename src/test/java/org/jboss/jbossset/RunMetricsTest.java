@@ -0,0 +1,115 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ryan Emerson
+ */
+public class RunMetricsTest {
+
+    private static final String JQL = "(assignee = user0 OR reporter = user0) ORDER BY updated ASC";
+
+    private StubJiraServer server;
+    private ExecutorService executor;
+    private DomainClientRegistry clients;
+
+    @Before
+    public void init() throws Exception {
+        server = new StubJiraServer("JBOSS", 250, 0);
+        executor = Executors.newSingleThreadExecutor();
+        clients = new DomainClientRegistry(1, 30000).setMaxRequestRate(1000)
+                .setRetryPolicy(new RetryPolicy(0, 1, 10))
+                .setMetrics(new RunMetrics());
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        clients.close();
+        server.close();
+    }
+
+    @Test
+    public void testResponsesRecorded() throws Exception {
+        IssuePager pager = new IssuePager(executor, clients.getClient(server.getUrl()), JQL,
+                IssueProcessor.getSearchFields(), 100, Integer.MAX_VALUE).start();
+        while (pager.hasNextPage())
+            pager.nextPage();
+
+        RunMetrics.DomainMetrics metrics = clients.getMetrics().getDomainMetrics(server.getUrl());
+        assertEquals(3, metrics.getResponses());
+        assertTrue(metrics.getBytesReceived() > 250 * 100);
+
+        StringWriter writer = new StringWriter();
+        clients.getMetrics().writePrometheus(writer, clients.getStats());
+        String label = "{domain=\"" + server.getUrl() + "\"";
+        String output = writer.toString();
+        assertTrue(output, output.contains("jira_reporter_requests_total" + label + "} 3\n"));
+        assertTrue(output,
+                output.contains("jira_reporter_response_latency_seconds_bucket" + label + ",le=\"+Inf\"} 3\n"));
+        assertTrue(output, output.contains("jira_reporter_received_bytes_total" + label + "} "
+                + metrics.getBytesReceived() + "\n"));
+        assertTrue(output, output.contains("jira_reporter_errors_total" + label + "} 0\n"));
+    }
+
+    @Test
+    public void testErrorsRecorded() throws Exception {
+        server.setFailures(1, 503, -1);
+        try {
+            new IssuePager(executor, clients.getClient(server.getUrl()), JQL, IssueProcessor.getSearchFields(), 100,
+                    Integer.MAX_VALUE).start().nextPage();
+        } catch (Exception e) {
+            // Expected, retries are disabled
+        }
+        StringWriter writer = new StringWriter();
+        clients.getMetrics().writePrometheus(writer, clients.getStats());
+        assertTrue(writer.toString().contains("jira_reporter_errors_total{domain=\"" + server.getUrl() + "\"} 1\n"));
+    }
+
+    @Test
+    public void testHistogramBuckets() throws Exception {
+        RunMetrics.Histogram histogram = new RunMetrics.Histogram();
+        histogram.record(1000000);
+        histogram.record(200000000);
+        histogram.record(60000000000L);
+        StringWriter writer = new StringWriter();
+        histogram.write(writer, "latency", "{domain=\"d\"}");
+        String output = writer.toString();
+        assertTrue(output, output.contains("latency_bucket{domain=\"d\",le=\"0.005\"} 1\n"));
+        assertTrue(output, output.contains("latency_bucket{domain=\"d\",le=\"0.25\"} 2\n"));
+        assertTrue(output, output.contains("latency_bucket{domain=\"d\",le=\"30\"} 2\n"));
+        assertTrue(output, output.contains("latency_bucket{domain=\"d\",le=\"+Inf\"} 3\n"));
+        assertTrue(output, output.contains("latency_sum{domain=\"d\"} 60.201\n"));
+        assertTrue(output, output.contains("latency_count{domain=\"d\"} 3\n"));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs a distributed report with worker processes against a stub server.
+ *
+ * @author Ryan Emerson
+ */
+public class ShardCoordinatorTest {
+
+    private static final int ISSUES_PER_USER = 3;
+
+    private StubJiraServer jboss;
+    private Path dir;
+    private final List<Process> workers = new ArrayList<>();
+
+    @Before
+    public void init() throws Exception {
+        jboss = new StubJiraServer("JBOSS", ISSUES_PER_USER, 0);
+        dir = Files.createTempDirectory("jira-reporter");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (Process worker : workers)
+            worker.destroyForcibly().waitFor();
+        jboss.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testShardsOfDeadWorkerReassigned() throws Exception {
+        Path domainFile = dir.resolve("domains.properties");
+        Files.write(domainFile, Arrays.asList("JBOSS=" + jboss.getUrl()));
+        List<String> args = new ArrayList<>(Arrays.asList("-u"));
+        List<String> users = new ArrayList<>();
+        for (int i = 0; i < 40; i++)
+            users.add("user" + i);
+        args.addAll(users);
+        args.addAll(Arrays.asList("-d", domainFile.toString(), "-s", "2015-01-01", "-e", "2015-12-31",
+                "-od", dir.toString(), "--workDir", dir.resolve("work").toString(), "--workers", "3",
+                "--workerTimeout", "2"));
+
+        // Worker 2 is never started, so its shards must be reassigned to the two worker processes
+        for (int worker = 0; worker < 2; worker++) {
+            List<String> command = new ArrayList<>(Arrays.asList(Paths.get(System.getProperty("java.home"), "bin",
+                    "java").toString(), "-cp", System.getProperty("java.class.path"), JiraReporter.class.getName()));
+            command.addAll(args);
+            command.addAll(Arrays.asList("--worker", String.valueOf(worker)));
+            File log = dir.resolve("worker-" + worker + ".log").toFile();
+            workers.add(new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start());
+        }
+
+        args.add("--coordinator");
+        CommandLineParser parser = new CommandLineParser(args.toArray(new String[args.size()]));
+        parser.parse();
+        Properties manifest = new ShardCoordinator(parser).run();
+
+        assertEquals("24", manifest.getProperty("shards"));
+        assertEquals(String.valueOf(users.size()), manifest.getProperty("users"));
+        assertEquals("0", manifest.getProperty("failures"));
+        ShardPlan plan = new ShardPlan(users, 24, 3);
+        boolean reassigned = false;
+        for (int shard = 0; shard < plan.getShardCount(); shard++) {
+            int worker = Integer.parseInt(manifest.getProperty("shard." + shard).split(",")[0]);
+            assertTrue(worker < 2);
+            reassigned |= plan.getWorker(shard) == 2;
+        }
+        assertTrue(reassigned);
+
+        for (Process worker : workers) {
+            assertTrue(worker.waitFor(10, TimeUnit.SECONDS));
+            assertEquals(0, worker.exitValue());
+        }
+        for (String user : users)
+            assertEquals(ISSUES_PER_USER + 3, Files.readAllLines(dir.resolve(user + ".csv")).size());
+        assertEquals(users.size(), jboss.getRequests());
+    }
+}
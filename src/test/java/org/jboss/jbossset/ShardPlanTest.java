@@ -0,0 +1,80 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ryan Emerson
+ */
+public class ShardPlanTest {
+
+    @Test
+    public void testUsersPartitionedDeterministically() {
+        List<String> users = new ArrayList<>();
+        for (int i = 0; i < 10000; i++)
+            users.add("user" + i);
+        ShardPlan plan = new ShardPlan(users, 32, 4);
+        ShardPlan other = new ShardPlan(users, 32, 4);
+
+        int[] usersPerWorker = new int[4];
+        int partitioned = 0;
+        for (int shard = 0; shard < plan.getShardCount(); shard++) {
+            assertEquals(plan.getUsers(shard), other.getUsers(shard));
+            assertEquals(plan.getWorker(shard), other.getWorker(shard));
+            usersPerWorker[plan.getWorker(shard)] += plan.getUsers(shard).size();
+            partitioned += plan.getUsers(shard).size();
+            for (String user : plan.getUsers(shard))
+                assertEquals(shard, ShardPlan.getShard(user.toUpperCase(), 32));
+        }
+        assertEquals(users.size(), partitioned);
+        for (int count : usersPerWorker)
+            assertTrue(Arrays.toString(usersPerWorker), count > users.size() / 8);
+    }
+
+    @Test
+    public void testOnlyShardsOfDeadWorkerReassigned() {
+        ShardPlan plan = new ShardPlan(Arrays.asList("user0", "user1"), 64, 4);
+        List<Integer> live = Arrays.asList(0, 2, 3);
+        List<Integer> reassignedTo = new ArrayList<>();
+        for (int shard = 0; shard < plan.getShardCount(); shard++) {
+            int worker = plan.getWorker(shard);
+            int reassigned = plan.getWorker(shard, live);
+            if (worker == 1)
+                reassignedTo.add(reassigned);
+            else
+                assertEquals(worker, reassigned);
+        }
+        assertTrue(live.containsAll(reassignedTo));
+        // The dead worker's shards are spread over the live workers rather than all moving to one
+        assertTrue(reassignedTo.toString(), reassignedTo.size() > 1 && !reassignedTo.stream().allMatch(
+                worker -> worker.equals(reassignedTo.get(0))));
+        assertEquals(-1, plan.getWorker(0, new ArrayList<Integer>()));
+    }
+}
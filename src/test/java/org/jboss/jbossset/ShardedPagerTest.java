@@ -0,0 +1,129 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ryan Emerson
+ */
+public class ShardedPagerTest {
+
+    private static final int NUMBER_OF_ISSUES = 50;
+    private static final List<String> USERS = Collections.singletonList("user0");
+    private static final String FIELDS = IssueProcessor.getSearchFields();
+    private static final LocalDate START = LocalDate.of(2015, 6, 1);
+    private static final LocalDate END = LocalDate.of(2015, 6, 2);
+
+    private StubJiraServer server;
+    private ExecutorService executor;
+    private DomainClientRegistry clients;
+
+    @Before
+    public void init() throws Exception {
+        server = new StubJiraServer("JBOSS", NUMBER_OF_ISSUES, 0);
+        executor = Executors.newFixedThreadPool(4);
+        clients = new DomainClientRegistry(4, 30000).setMaxRequestRate(1000)
+                .setRetryPolicy(new RetryPolicy(3, 1, 10));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        clients.close();
+        server.close();
+    }
+
+    @Test
+    public void testShardsReturnedInSearchOrder() throws Exception {
+        ShardedPager pager = newPager("ORDER BY updated ASC", Integer.MAX_VALUE)
+                .setSharding(START, END, false, 8, 4).start();
+        List<String> keys = consume(pager);
+        assertEquals(NUMBER_OF_ISSUES, keys.size());
+        for (int i = 0; i < NUMBER_OF_ISSUES; i++)
+            assertEquals("JBOSS-user0-" + i, keys.get(i));
+        // Every window holds at most 8 issues, as each minute of the stub's update times only holds a single issue
+        assertTrue(pager.getShards() >= NUMBER_OF_ISSUES / 8);
+        assertFalse(pager.isTruncated());
+    }
+
+    @Test
+    public void testDescendingShardsReversed() throws Exception {
+        ShardedPager pager = newPager("ORDER BY updated DESC", Integer.MAX_VALUE)
+                .setSharding(START, END, true, 8, 4).start();
+        List<String> keys = consume(pager);
+        assertEquals(NUMBER_OF_ISSUES, keys.size());
+        for (int i = 0; i < NUMBER_OF_ISSUES; i++)
+            assertEquals("JBOSS-user0-" + (NUMBER_OF_ISSUES - 1 - i), keys.get(i));
+    }
+
+    @Test
+    public void testOnlyRequiredShardsSearched() throws Exception {
+        ShardedPager pager = newPager("ORDER BY updated ASC", 12).setSharding(START, END, false, 8, 1).start();
+        List<String> keys = consume(pager);
+        assertEquals(12, keys.size());
+        assertEquals("JBOSS-user0-11", keys.get(11));
+        assertTrue(pager.isTruncated());
+
+        // Only the windows holding the first 12 issues are retrieved, with a single page each
+        int probes = server.getRequests() - pager.getShards();
+        assertTrue(pager.getShards() < NUMBER_OF_ISSUES / 8);
+        assertTrue(probes > 0);
+    }
+
+    @Test
+    public void testUnshardedSearch() throws Exception {
+        ShardedPager pager = newPager("ORDER BY updated ASC", Integer.MAX_VALUE).start();
+        assertEquals(NUMBER_OF_ISSUES, consume(pager).size());
+        assertEquals(1, pager.getShards());
+        assertEquals(NUMBER_OF_ISSUES / 5, server.getRequests());
+    }
+
+    private ShardedPager newPager(String queryBody, int maxIssues) {
+        return new ShardedPager(executor, clients.getClient(server.getUrl()), new JqlQueryBuilder(queryBody, 100),
+                USERS, "", FIELDS, 5, maxIssues);
+    }
+
+    private static List<String> consume(ShardedPager pager) throws Exception {
+        List<String> keys = new ArrayList<>();
+        List<IssueRecord> page = pager.nextPage();
+        while (page != null) {
+            for (IssueRecord issue : page)
+                keys.add(issue.getKey());
+            page = pager.hasNextPage() ? pager.nextPage() : null;
+        }
+        return keys;
+    }
+}
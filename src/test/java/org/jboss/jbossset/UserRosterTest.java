@@ -0,0 +1,93 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * @author Ryan Emerson
+ */
+public class UserRosterTest {
+
+    private Path file;
+
+    @Before
+    public void init() throws Exception {
+        file = Files.createTempFile("users", ".txt");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.delete(file);
+    }
+
+    @Test
+    public void testCommentsBlanksAndDuplicatesSkipped() throws Exception {
+        Files.write(file, Arrays.asList("# The team", "user0", "", "  user1  ", "USER0", "user2 user3", "\tuser3",
+                "user1"), StandardCharsets.UTF_8);
+        UserRoster roster = new UserRoster(file);
+        assertEquals(Arrays.asList("user0", "user1", "user3"), toList(roster));
+        // Each iteration reads the file again
+        assertEquals(Arrays.asList("user0", "user1", "user3"), toList(roster));
+    }
+
+    @Test
+    public void testLargeGzipRosterStreamed() throws Exception {
+        int numberOfUsers = 200000;
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file));
+             PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            for (int i = 0; i < numberOfUsers; i++)
+                writer.println("user" + i);
+            for (int i = 0; i < numberOfUsers; i += 2)
+                writer.println("User" + i);
+        }
+
+        Iterator<String> it = new UserRoster(file).iterator();
+        for (int i = 0; i < numberOfUsers; i++)
+            assertEquals("user" + i, it.next());
+        assertFalse(it.hasNext());
+    }
+
+    private static List<String> toList(Iterable<String> users) {
+        List<String> list = new ArrayList<>();
+        for (String user : users)
+            list.add(user);
+        return list;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ryan Emerson
+ */
+public class VirtualThreadExecutorTest {
+
+    @Test
+    public void testConcurrencyBoundedByPermits() throws Exception {
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("test", 3);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(executor.submit(() -> {
+                maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                concurrent.decrementAndGet();
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(maxConcurrent.get() > 1);
+        assertTrue(maxConcurrent.get() <= 3);
+    }
+
+    @Test
+    public void testShutdownNowCancelsWaitingTasks() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("test", 1);
+        Future<?> running = executor.submit(() -> {
+            started.countDown();
+            Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            return null;
+        });
+        // The first task must hold the only permit before the second is submitted, or the second may run first
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        Future<?> waiting = executor.submit(() -> { });
+
+        assertEquals(0, executor.shutdownNow().size());
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        try {
+            waiting.get(10, TimeUnit.SECONDS);
+            fail("The waiting task should have been cancelled");
+        } catch (CancellationException e) {
+            assertTrue(running.isDone());
+        }
+    }
+}
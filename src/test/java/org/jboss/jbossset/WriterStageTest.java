@@ -0,0 +1,100 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.jbossset;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ryan Emerson
+ */
+public class WriterStageTest {
+
+    @Test
+    public void testTasksOfAKeyExecutedInOrder() throws Exception {
+        final List<Integer> executed = Collections.synchronizedList(new ArrayList<Integer>());
+        try (WriterStage stage = new WriterStage(4, 2)) {
+            for (int i = 0; i < 1000; i++) {
+                final int task = i;
+                stage.getLane("user0").submit(() -> executed.add(task));
+            }
+        }
+        assertEquals(1000, executed.size());
+        for (int i = 0; i < executed.size(); i++)
+            assertEquals(i, (int) executed.get(i));
+    }
+
+    @Test
+    public void testSubmitBlocksWhenQueueFull() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean submitted = new AtomicBoolean();
+        try (WriterStage stage = new WriterStage(1, 1)) {
+            final WriterStage.Lane lane = stage.getLane("user0");
+            lane.submit(() -> await(release));
+            // The first task is executing, so this task fills the queue and the next submission must block
+            lane.submit(() -> { });
+            Thread submitter = new Thread(() -> {
+                try {
+                    lane.submit(() -> { });
+                    submitted.set(true);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            submitter.start();
+            submitter.join(200);
+            assertFalse(submitted.get());
+
+            release.countDown();
+            submitter.join(TimeUnit.SECONDS.toMillis(10));
+            assertTrue(submitted.get());
+        }
+    }
+
+    @Test
+    public void testInlineWithoutThreads() throws Exception {
+        final Thread caller = Thread.currentThread();
+        final AtomicBoolean inline = new AtomicBoolean();
+        try (WriterStage stage = new WriterStage(0, 1)) {
+            stage.getLane("user0").submit(() -> inline.set(Thread.currentThread() == caller));
+        }
+        assertTrue(inline.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}